@@ -0,0 +1,127 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.commons.jackson.benchmarks;
+
+import eu.trentorise.opendata.commons.Dict;
+import eu.trentorise.opendata.commons.LocalizedString;
+import eu.trentorise.opendata.commons.PeriodOfTime;
+import eu.trentorise.opendata.commons.validation.Ref;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Deterministic fixtures shared by benchmarks, so results of different runs
+ * can be compared.
+ */
+final class BenchData {
+
+    /**
+     * Length of strings for {@code short} size
+     */
+    static final int SHORT_LENGTH = 10;
+
+    /**
+     * Length of strings for {@code long} size
+     */
+    static final int LONG_LENGTH = 1000;
+
+    private static final String[] LANGUAGES;
+
+    static {
+        // sorted, so the first n locales are always the same
+        LANGUAGES = Locale.getISOLanguages();
+        Arrays.sort(LANGUAGES);
+    }
+
+    private BenchData() {
+    }
+
+    /**
+     * Returns the string length associated to size name, which can be
+     * {@code short} or {@code long}
+     */
+    static int length(String size) {
+        if ("short".equals(size)) {
+            return SHORT_LENGTH;
+        }
+        if ("long".equals(size)) {
+            return LONG_LENGTH;
+        }
+        throw new IllegalArgumentException("Unknown size: " + size);
+    }
+
+    /**
+     * Returns the i-th locale. Odd locales also have a country, to exercise
+     * {@code it_IT} style keys.
+     */
+    static Locale locale(int i) {
+        String language = LANGUAGES[i % LANGUAGES.length];
+        if (i % 2 == 1) {
+            return new Locale(language, language.toUpperCase(Locale.ENGLISH));
+        } else {
+            return new Locale(language);
+        }
+    }
+
+    /**
+     * Returns a string of given length with a few non ascii characters, so
+     * encoders can't take only the ascii fast path.
+     */
+    static String text(int seed, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        int i = 0;
+        while (sb.length() < length) {
+            if ((seed + i) % 17 == 0) {
+                sb.append('\u00e8');
+            } else if ((seed + i) % 7 == 0) {
+                sb.append(' ');
+            } else {
+                sb.append((char) ('a' + (seed + i) % 26));
+            }
+            i++;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns a dict with {@code locales} locales, each having two strings of
+     * length {@code length}.
+     */
+    static Dict dict(int locales, int length) {
+        Dict.Builder builder = Dict.builder();
+        for (int i = 0; i < locales; i++) {
+            builder.put(locale(i), text(i, length), text(i + 1, length));
+        }
+        return builder.build();
+    }
+
+    static LocalizedString localizedString(int length) {
+        return LocalizedString.of(Locale.ITALIAN, text(0, length));
+    }
+
+    static PeriodOfTime periodOfTime() {
+        return PeriodOfTime.of("1980-01-01", "1990-12-31", "from 1980 to 1990");
+    }
+
+    static Ref ref() {
+        return Ref.builder()
+                .setDocumentId("http://example.org/dataset/123")
+                .setPhysicalRow(12)
+                .setPhysicalColumn(3)
+                .setTracePath("$.resources[3].name")
+                .build();
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.commons.jackson.benchmarks;
+
+import eu.trentorise.opendata.commons.Dict;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.guava.GuavaModule;
+import eu.trentorise.opendata.commons.jackson.Jacksonizer;
+import eu.trentorise.opendata.commons.jackson.LazyDict;
+import eu.trentorise.opendata.commons.jackson.LocaleFilter;
+import eu.trentorise.opendata.commons.jackson.SerializedFormCache;
+import eu.trentorise.opendata.commons.jackson.TodCommonsModule;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serialization and deserialization of {@link Dict} through
+ * {@link Jacksonizer}, with String, byte[] and stream I/O. {@code Cached}
+ * benchmarks write through a {@link SerializedFormCache}. {@code FirstLocale}
+ * benchmarks read a single locale, eagerly, through a {@link LazyDict} or
+ * dropping the others with a {@link LocaleFilter}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DictBenchmark {
+
+    @Param({"1", "5", "50"})
+    public int locales;
+
+    @Param({"short", "long"})
+    public String size;
+
+    private static final Jacksonizer.BytesCallback<Integer> LENGTH = new Jacksonizer.BytesCallback<Integer>() {
+        @Override
+        public Integer onBytes(byte[] bytes, int offset, int len) {
+            return len;
+        }
+    };
+
+    private Jacksonizer jacksonizer;
+    private Jacksonizer cachedJacksonizer;
+    private Jacksonizer filteredJacksonizer;
+    private Dict dict;
+    private Locale firstLocale;
+    private String json;
+    private byte[] jsonBytes;
+    private ByteArrayOutputStream out;
+
+    @Setup
+    public void setup() {
+        jacksonizer = Jacksonizer.of();
+        ObjectMapper om = new ObjectMapper();
+        om.registerModule(new GuavaModule());
+        om.registerModule(new TodCommonsModule().setSerializedFormCache(SerializedFormCache.byIdentity(1000000)));
+        cachedJacksonizer = Jacksonizer.of(om);
+        dict = BenchData.dict(locales, BenchData.length(size));
+        firstLocale = dict.locales().iterator().next();
+        filteredJacksonizer = jacksonizer.withLocaleFilter(LocaleFilter.of(firstLocale));
+        json = jacksonizer.toJson(dict);
+        jsonBytes = jacksonizer.toJsonBytes(dict);
+        out = new ByteArrayOutputStream(jsonBytes.length * 2);
+
+        if (!dict.equals(jacksonizer.fromJson(json, Dict.class))) {
+            throw new IllegalStateException("Dict doesn't survive round trip: " + json);
+        }
+    }
+
+    @Benchmark
+    public String serString() {
+        return jacksonizer.toJson(dict);
+    }
+
+    @Benchmark
+    public byte[] serBytes() {
+        return jacksonizer.toJsonBytes(dict);
+    }
+
+    @Benchmark
+    public int serStream() {
+        out.reset();
+        jacksonizer.writeTo(dict, out);
+        return out.size();
+    }
+
+    @Benchmark
+    public int serBorrowed() {
+        return jacksonizer.withJsonBytes(dict, LENGTH);
+    }
+
+    @Benchmark
+    public String serStringCached() {
+        return cachedJacksonizer.toJson(dict);
+    }
+
+    @Benchmark
+    public byte[] serBytesCached() {
+        return cachedJacksonizer.toJsonBytes(dict);
+    }
+
+    @Benchmark
+    public int serBorrowedCached() {
+        return cachedJacksonizer.withJsonBytes(dict, LENGTH);
+    }
+
+    @Benchmark
+    public Dict deserString() {
+        return jacksonizer.fromJson(json, Dict.class);
+    }
+
+    @Benchmark
+    public Dict deserBytes() {
+        return jacksonizer.fromJson(jsonBytes, Dict.class);
+    }
+
+    @Benchmark
+    public Dict deserStream() {
+        return jacksonizer.fromJson(new ByteArrayInputStream(jsonBytes), Dict.class);
+    }
+
+    @Benchmark
+    public String deserBytesFirstLocale() {
+        return jacksonizer.fromJson(jsonBytes, Dict.class).nonEmptyString(firstLocale);
+    }
+
+    @Benchmark
+    public String deserBytesFirstLocaleLazy() {
+        return jacksonizer.fromJson(jsonBytes, LazyDict.class).nonEmptyString(firstLocale);
+    }
+
+    @Benchmark
+    public String deserBytesFirstLocaleFiltered() {
+        return filteredJacksonizer.fromJson(jsonBytes, Dict.class).nonEmptyString(firstLocale);
+    }
+}
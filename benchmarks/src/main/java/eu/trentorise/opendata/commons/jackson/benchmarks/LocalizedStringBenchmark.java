@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.commons.jackson.benchmarks;
+
+import eu.trentorise.opendata.commons.LocalizedString;
+import eu.trentorise.opendata.commons.jackson.Jacksonizer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serialization and deserialization of {@link LocalizedString} through
+ * {@link Jacksonizer}, with String, byte[] and stream I/O.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocalizedStringBenchmark {
+
+    @Param({"short", "long"})
+    public String size;
+
+    private Jacksonizer jacksonizer;
+    private LocalizedString localizedString;
+    private String json;
+    private byte[] jsonBytes;
+    private ByteArrayOutputStream out;
+
+    @Setup
+    public void setup() {
+        jacksonizer = Jacksonizer.of();
+        localizedString = BenchData.localizedString(BenchData.length(size));
+        json = jacksonizer.toJson(localizedString);
+        jsonBytes = jacksonizer.toJsonBytes(localizedString);
+        out = new ByteArrayOutputStream(jsonBytes.length * 2);
+
+        if (!localizedString.equals(jacksonizer.fromJson(json, LocalizedString.class))) {
+            throw new IllegalStateException("LocalizedString doesn't survive round trip: " + json);
+        }
+    }
+
+    @Benchmark
+    public String serString() {
+        return jacksonizer.toJson(localizedString);
+    }
+
+    @Benchmark
+    public byte[] serBytes() {
+        return jacksonizer.toJsonBytes(localizedString);
+    }
+
+    @Benchmark
+    public int serStream() {
+        out.reset();
+        jacksonizer.writeTo(localizedString, out);
+        return out.size();
+    }
+
+    @Benchmark
+    public LocalizedString deserString() {
+        return jacksonizer.fromJson(json, LocalizedString.class);
+    }
+
+    @Benchmark
+    public LocalizedString deserBytes() {
+        return jacksonizer.fromJson(jsonBytes, LocalizedString.class);
+    }
+
+    @Benchmark
+    public LocalizedString deserStream() {
+        return jacksonizer.fromJson(new ByteArrayInputStream(jsonBytes), LocalizedString.class);
+    }
+}
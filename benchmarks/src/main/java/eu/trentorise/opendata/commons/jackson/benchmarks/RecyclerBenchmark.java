@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.commons.jackson.benchmarks;
+
+import eu.trentorise.opendata.commons.Dict;
+import eu.trentorise.opendata.commons.jackson.Jacksonizer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares Jackson thread local buffer recycling ({@link Jacksonizer#of()})
+ * with the shared pool of {@link Jacksonizer#ofPooledBuffers()}, both when
+ * the same threads are reused and when each task runs on a new thread, as in
+ * thread per request servers.
+ *
+ * Thread creation dominates timings of {@code newThread}, compare instead
+ * allocation rates with {@code -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecyclerBenchmark {
+
+    @Param({"threadLocal", "pooled"})
+    public String recycler;
+
+    private Jacksonizer jacksonizer;
+    private Dict dict;
+    private byte[] json;
+
+    @Setup
+    public void setup() {
+        if ("threadLocal".equals(recycler)) {
+            jacksonizer = Jacksonizer.of();
+        } else if ("pooled".equals(recycler)) {
+            jacksonizer = Jacksonizer.ofPooledBuffers();
+        } else {
+            throw new IllegalArgumentException("Unknown recycler: " + recycler);
+        }
+        dict = BenchData.dict(5, BenchData.LONG_LENGTH);
+        json = jacksonizer.toJsonBytes(dict);
+    }
+
+    private Dict task() {
+        jacksonizer.toJson(dict);
+        return jacksonizer.fromJson(json, Dict.class);
+    }
+
+    @Benchmark
+    public Dict sameThread() {
+        return task();
+    }
+
+    @Benchmark
+    public Dict newThread() throws InterruptedException {
+        final Dict[] ret = new Dict[1];
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ret[0] = task();
+            }
+        });
+        thread.start();
+        thread.join();
+        return ret[0];
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.commons.jackson.benchmarks;
+
+import eu.trentorise.opendata.commons.PeriodOfTime;
+import eu.trentorise.opendata.commons.jackson.Jacksonizer;
+import eu.trentorise.opendata.commons.validation.Ref;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serialization and deserialization of small tod-commons values
+ * ({@link PeriodOfTime}, {@link Ref}, {@link Locale}) through
+ * {@link Jacksonizer}. For these, per call overhead dominates, so only String
+ * and byte[] I/O are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValuesBenchmark {
+
+    private Jacksonizer jacksonizer;
+
+    private PeriodOfTime periodOfTime;
+    private byte[] periodOfTimeJson;
+
+    private Ref ref;
+    private byte[] refJson;
+
+    private Locale locale;
+    private String localeJson;
+
+    @Setup
+    public void setup() {
+        jacksonizer = Jacksonizer.of();
+
+        periodOfTime = BenchData.periodOfTime();
+        periodOfTimeJson = jacksonizer.toJsonBytes(periodOfTime);
+
+        ref = BenchData.ref();
+        refJson = jacksonizer.toJsonBytes(ref);
+
+        locale = Locale.ITALY;
+        localeJson = jacksonizer.toJson(locale);
+    }
+
+    @Benchmark
+    public byte[] serPeriodOfTime() {
+        return jacksonizer.toJsonBytes(periodOfTime);
+    }
+
+    @Benchmark
+    public PeriodOfTime deserPeriodOfTime() {
+        return jacksonizer.fromJson(periodOfTimeJson, PeriodOfTime.class);
+    }
+
+    @Benchmark
+    public byte[] serRef() {
+        return jacksonizer.toJsonBytes(ref);
+    }
+
+    @Benchmark
+    public Ref deserRef() {
+        return jacksonizer.fromJson(refJson, Ref.class);
+    }
+
+    @Benchmark
+    public String serLocale() {
+        return jacksonizer.toJson(locale);
+    }
+
+    @Benchmark
+    public Locale deserLocale() {
+        return jacksonizer.fromJson(localeJson, Locale.class);
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.commons.jackson;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+/**
+ * Holds the Jacksonizer of {@link Jacksonizer#ofCbor()}. Only this class
+ * refers to {@code jackson-dataformat-cbor}, which is an optional
+ * dependency: it is loaded on first call of {@code ofCbor()}, so json
+ * Jacksonizers work also without the jar.
+ */
+final class CborSupport {
+
+    static final Jacksonizer INSTANCE = Jacksonizer.of(mapper());
+
+    private CborSupport() {
+    }
+
+    private static ObjectMapper mapper() {
+        ObjectMapper ret = new ObjectMapper(new CBORFactory());
+        TodCommonsModule.registerModulesInto(ret);
+        return ret;
+    }
+}
@@ -0,0 +1,377 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.commons.jackson;
+
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableList;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Decodes json values arriving in chunks of bytes, i.e. from a non blocking
+ * network channel, without waiting for the whole payload. Each chunk is
+ * scanned as it comes, and every value completed by it is decoded right away
+ * and returned by {@link #feed(ByteBuffer)}.
+ *
+ * Input can be either a sequence of root values separated by whitespace (as
+ * in <a href="http://ndjson.org/" target="_blank">newline delimited
+ * json</a>), see {@link #of(Jacksonizer, Class)}, or a single array whose
+ * elements are returned one by one, see
+ * {@link #ofArrayElements(Jacksonizer, Class)}. Json must be UTF-8 encoded.
+ *
+ * Only the bytes of the value being received are kept in memory. Complete
+ * values are decoded with {@link Jacksonizer#fromJson(byte[], int, int, Class)},
+ * so the same deserializers, listener and error messages are used.
+ *
+ * <p>
+ * Example:
+ * </p>
+ * <pre>
+ * ChunkedJsonDecoder&lt;Dict&gt; decoder = ChunkedJsonDecoder.of(Jacksonizer.of(), Dict.class);
+ * // for each received buffer
+ * for (Dict dict : decoder.feed(buffer)) {
+ *      ...
+ * }
+ * // at end of input
+ * decoder.finish();
+ * </pre>
+ *
+ * @since 2.0.0
+ */
+@ParametersAreNonnullByDefault
+@NotThreadSafe
+@Beta
+public final class ChunkedJsonDecoder<T> {
+
+    private static final int INITIAL_SIZE = 1024;
+
+    private final Jacksonizer jacksonizer;
+    private final Class<T> clazz;
+    private final boolean arrayElements;
+
+    /**
+     * Bytes of the value being received, from position 0
+     */
+    private byte[] buf = new byte[INITIAL_SIZE];
+    private int size;
+    /**
+     * Start of the value being received in {@link #buf}, -1 if none.
+     */
+    private int valueStart = -1;
+    /**
+     * Bytes dropped from the start of {@link #buf} so far, for error
+     * messages.
+     */
+    private long dropped;
+
+    /**
+     * Depth at which values are returned: 0 for root values, 1 for array
+     * elements.
+     */
+    private final int valueDepth;
+    private int depth;
+    private boolean inString;
+    private boolean escape;
+    /**
+     * True while inside a number or a literal like {@code true} at value
+     * depth, which only ends when a following byte is seen.
+     */
+    private boolean inScalar;
+    private boolean arrayOpened;
+    private boolean arrayClosed;
+    /**
+     * In array mode, whether last thing seen in the array is an element or a
+     * comma.
+     */
+    private boolean afterElement;
+    private boolean afterComma;
+    private boolean finished;
+
+    private ChunkedJsonDecoder(Jacksonizer jacksonizer, Class<T> clazz, boolean arrayElements) {
+        this.jacksonizer = jacksonizer;
+        this.clazz = clazz;
+        this.arrayElements = arrayElements;
+        this.valueDepth = arrayElements ? 1 : 0;
+    }
+
+    /**
+     * Returns a decoder of a sequence of root json values of type
+     * {@code clazz}, separated by whitespace.
+     *
+     * @throws IllegalStateException if jacksonizer is for a binary format.
+     */
+    public static <T> ChunkedJsonDecoder<T> of(Jacksonizer jacksonizer, Class<T> clazz) {
+        checkNotNull(jacksonizer);
+        checkNotNull(clazz);
+        jacksonizer.checkTextual();
+        return new ChunkedJsonDecoder<T>(jacksonizer, clazz, false);
+    }
+
+    /**
+     * Returns a decoder of a single json array, returning its elements of type
+     * {@code clazz} as soon as each one is complete. Empty input is accepted
+     * as no elements.
+     *
+     * @throws IllegalStateException if jacksonizer is for a binary format.
+     */
+    public static <T> ChunkedJsonDecoder<T> ofArrayElements(Jacksonizer jacksonizer, Class<T> clazz) {
+        checkNotNull(jacksonizer);
+        checkNotNull(clazz);
+        jacksonizer.checkTextual();
+        return new ChunkedJsonDecoder<T>(jacksonizer, clazz, true);
+    }
+
+    /**
+     * Consumes all the bytes between position and limit of provided buffer
+     * and returns the values they complete, in input order. On return the
+     * buffer position is at its limit.
+     *
+     * @throws IllegalArgumentException on json error. The decoder can't be
+     * used anymore after an error.
+     * @throws IllegalStateException if {@link #finish()} was already called.
+     */
+    public List<T> feed(ByteBuffer chunk) {
+        checkNotNull(chunk);
+        checkNotFinished();
+        int len = chunk.remaining();
+        if (chunk.hasArray()) {
+            List<T> ret = feed(chunk.array(), chunk.arrayOffset() + chunk.position(), len);
+            chunk.position(chunk.limit());
+            return ret;
+        }
+        ensureCapacity(size + len);
+        chunk.get(buf, size, len);
+        size += len;
+        return scan(size - len);
+    }
+
+    /**
+     * Consumes {@code len} bytes of provided array starting at {@code offset}
+     * and returns the values they complete, in input order. The array is not
+     * retained.
+     *
+     * @throws IllegalArgumentException on json error. The decoder can't be
+     * used anymore after an error.
+     * @throws IllegalStateException if {@link #finish()} was already called.
+     */
+    public List<T> feed(byte[] chunk, int offset, int len) {
+        checkNotNull(chunk);
+        checkNotFinished();
+        checkPositionIndexes(offset, offset + len, chunk.length);
+        ensureCapacity(size + len);
+        System.arraycopy(chunk, offset, buf, size, len);
+        size += len;
+        return scan(size - len);
+    }
+
+    /**
+     * Signals the end of input and returns the last value if it was still
+     * pending, i.e. a number at the very end of a stream of root values.
+     *
+     * @throws IllegalArgumentException if input ended in the middle of a
+     * value or of the array.
+     * @throws IllegalStateException if already called.
+     */
+    public List<T> finish() {
+        checkNotFinished();
+        finished = true;
+        List<T> ret = ImmutableList.of();
+        if (inScalar) {
+            ret = new ArrayList<T>(1);
+            complete(size, ret);
+        }
+        if (valueStart >= 0 || depth > 0 || (arrayOpened && !arrayClosed)) {
+            throw new IllegalArgumentException("Json input for " + clazz.getName() + " ended before completing "
+                    + (valueStart >= 0 ? "a value started at byte " + (dropped + valueStart) : "the array")
+                    + "!");
+        }
+        return ret;
+    }
+
+    private List<T> scan(int from) {
+        List<T> ret = null;
+        int i = from;
+        while (i < size) {
+            byte b = buf[i];
+            if (inString) {
+                if (escape) {
+                    escape = false;
+                } else if (b == '\\') {
+                    escape = true;
+                } else if (b == '"') {
+                    inString = false;
+                    if (depth == valueDepth) {
+                        ret = complete(i + 1, ret);
+                    }
+                }
+                i++;
+                continue;
+            }
+            if (inScalar) {
+                if (!endsScalar(b)) {
+                    i++;
+                    continue;
+                }
+                // the byte ending the scalar is then scanned on its own
+                ret = complete(i, ret);
+            }
+            switch (b) {
+                case ' ':
+                case '\t':
+                case '\n':
+                case '\r':
+                    break;
+                case '{':
+                case '[':
+                    if (arrayElements && !arrayOpened) {
+                        if (b != '[') {
+                            throw unexpected(b, i);
+                        }
+                        arrayOpened = true;
+                    } else {
+                        startValue(b, i);
+                    }
+                    depth++;
+                    break;
+                case '}':
+                case ']':
+                    if (depth == 0) {
+                        throw unexpected(b, i);
+                    }
+                    depth--;
+                    if (arrayElements && depth == 0) {
+                        if (b != ']' || valueStart >= 0 || afterComma) {
+                            throw unexpected(b, i);
+                        }
+                        arrayClosed = true;
+                    } else if (depth == valueDepth) {
+                        ret = complete(i + 1, ret);
+                    }
+                    break;
+                case ',':
+                    if (depth == valueDepth) {
+                        if (!arrayElements || !afterElement) {
+                            throw unexpected(b, i);
+                        }
+                        afterElement = false;
+                        afterComma = true;
+                    } else if (depth < valueDepth) {
+                        throw unexpected(b, i);
+                    }
+                    break;
+                case '"':
+                    startValue(b, i);
+                    inString = true;
+                    break;
+                default:
+                    if (depth == valueDepth) {
+                        startValue(b, i);
+                        inScalar = true;
+                    } else if (depth < valueDepth) {
+                        throw unexpected(b, i);
+                    }
+            }
+            i++;
+        }
+        compact();
+        return ret == null ? ImmutableList.<T>of() : ret;
+    }
+
+    private static boolean endsScalar(byte b) {
+        switch (b) {
+            case ' ':
+            case '\t':
+            case '\n':
+            case '\r':
+            case ',':
+            case ':':
+            case '{':
+            case '}':
+            case '[':
+            case ']':
+            case '"':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void startValue(byte b, int i) {
+        if (depth < valueDepth || arrayClosed) {
+            throw unexpected(b, i);
+        }
+        if (depth == valueDepth) {
+            if (afterElement) {
+                throw unexpected(b, i);
+            }
+            valueStart = i;
+            afterComma = false;
+        }
+    }
+
+    /**
+     * Decodes the value ending at {@code end} (exclusive) and adds it to
+     * {@code values}, which is created if null.
+     */
+    private List<T> complete(int end, @Nullable List<T> values) {
+        List<T> ret = values == null ? new ArrayList<T>() : values;
+        ret.add(jacksonizer.fromJson(buf, valueStart, end - valueStart, clazz));
+        valueStart = -1;
+        inScalar = false;
+        afterElement = arrayElements;
+        return ret;
+    }
+
+    /**
+     * Drops the bytes before the value being received.
+     */
+    private void compact() {
+        int keep = valueStart < 0 ? size : valueStart;
+        if (keep > 0) {
+            System.arraycopy(buf, keep, buf, 0, size - keep);
+            size -= keep;
+            dropped += keep;
+            if (valueStart >= 0) {
+                valueStart = 0;
+            }
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(capacity, buf.length * 2));
+        }
+    }
+
+    private void checkNotFinished() {
+        if (finished) {
+            throw new IllegalStateException("Tried to use a ChunkedJsonDecoder after finish() was called!");
+        }
+    }
+
+    private IllegalArgumentException unexpected(byte b, int i) {
+        return new IllegalArgumentException("Unexpected character '" + (char) (b & 0xFF) + "' at byte "
+                + (dropped + i) + " while decoding json " + (arrayElements ? "array of " : "values of ")
+                + clazz.getName() + "!");
+    }
+}
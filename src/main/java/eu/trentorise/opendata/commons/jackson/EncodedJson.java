@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.commons.jackson;
+
+import com.google.common.annotations.Beta;
+import com.google.common.hash.HashCode;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * The serialized form of an object along with a hash of its bytes, as
+ * returned by {@link Jacksonizer#encode(Object)}. Meant for http responses,
+ * where the hash provides the ETag.
+ *
+ * Instances may be shared by many callers, so bytes are only exposed as read
+ * only views or copies.
+ *
+ * @since 2.0.0
+ */
+@Beta
+@Immutable
+public final class EncodedJson {
+
+    private final byte[] bytes;
+    private final HashCode hash;
+    private final String etag;
+
+    EncodedJson(byte[] bytes, HashCode hash) {
+        this.bytes = bytes;
+        this.hash = hash;
+        this.etag = '"' + hash.toString() + '"';
+    }
+
+    /**
+     * Number of encoded bytes
+     */
+    public int size() {
+        return bytes.length;
+    }
+
+    /**
+     * Returns a copy of the encoded bytes.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(bytes, bytes.length);
+    }
+
+    /**
+     * Returns a read only buffer over the encoded bytes, without copying
+     * them.
+     */
+    public ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
+    /**
+     * Writes the encoded bytes to provided stream, which is not closed.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(bytes);
+    }
+
+    /**
+     * The hash of the encoded bytes
+     */
+    public HashCode getHash() {
+        return hash;
+    }
+
+    /**
+     * Returns a strong http entity tag for the encoded bytes, which is the
+     * hexadecimal {@link #getHash() hash} between double quotes.
+     */
+    public String getETag() {
+        return etag;
+    }
+
+    @Override
+    public String toString() {
+        return "EncodedJson{" + "size=" + bytes.length + ", etag=" + etag + '}';
+    }
+}
@@ -15,18 +15,66 @@
  */
 package eu.trentorise.opendata.commons.jackson;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedOutputStream;
 import com.fasterxml.jackson.datatype.guava.GuavaModule;
 import com.google.common.annotations.Beta;
+import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.Weigher;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingOutputStream;
+import com.google.common.io.CountingInputStream;
+import com.google.common.io.CountingOutputStream;
+import eu.trentorise.opendata.commons.jackson.JacksonizerListener.Operation;
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 import javax.annotation.concurrent.Immutable;
 
 /**
  * Utility class to provide a simple interface to Jackson methods
  *
+ * Since 2.0.0 readers and writers are prepared once per type and cached, so
+ * changes to the configuration of a wrapped object mapper done after the
+ * Jacksonizer was created might not be seen.
+ *
+ * Since 2.0.0 the wrapped mapper may also use a binary format like Smile or
+ * CBOR (see {@link #ofSmile()} and {@link #ofCbor()}): 'json' in method names
+ * then stands for the format of the mapper. Binary Jacksonizers only support
+ * byte and stream oriented methods, methods using strings, readers and
+ * writers throw {@link IllegalStateException}.
+ *
  * @author David Leoni
  */
 @ParametersAreNonnullByDefault
@@ -37,20 +85,131 @@ public final class Jacksonizer {
     /**
      * The singleton instance of the Jacksonizer
      */
-    private static final Jacksonizer INSTANCE = new Jacksonizer();
+    private static final Jacksonizer INSTANCE = new Jacksonizer(defaultMapper());
 
-    private ObjectMapper objectMapper;
+    /**
+     * Past this number of mappers the least recently used shared Jacksonizer
+     * is discarded, see {@link #ofShared(ObjectMapper)}
+     */
+    private static final int MAX_SHARED_MAPPERS = 64;
 
-    private Jacksonizer() {
-        objectMapper = new ObjectMapper();
-        objectMapper.registerModule(new GuavaModule());
-        objectMapper.registerModule(new TodCommonsModule());
-    }
+    /**
+     * Jacksonizers by identity of the wrapped mapper, as mappers don't
+     * override {@code equals}. Keys can't be weak, as each Jacksonizer holds
+     * its mapper, so the cache is bounded instead.
+     */
+    private static final LoadingCache<ObjectMapper, Jacksonizer> SHARED = CacheBuilder.newBuilder()
+            .maximumSize(MAX_SHARED_MAPPERS)
+            .build(new CacheLoader<ObjectMapper, Jacksonizer>() {
+                @Override
+                public Jacksonizer load(ObjectMapper objectMapper) {
+                    return new Jacksonizer(objectMapper);
+                }
+            });
+
+    /**
+     * Past this number of types readers and writers are created on each call
+     * and not cached.
+     */
+    private static final int MAX_CACHED_TYPES = 1000;
+
+    /**
+     * Chars of json shown before and after the location of an error.
+     */
+    private static final int EXCERPT_RADIUS = 40;
+
+    /**
+     * Hash of {@link EncodedJson}, fast and wide enough to make ETag
+     * collisions of different contents practically impossible.
+     */
+    private static final HashFunction ENCODED_HASH = Hashing.murmur3_128();
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Whether the mapper writes a binary format instead of text
+     */
+    private final boolean binary;
+
+    /**
+     * Readers by {@link Class}, {@link java.lang.reflect.Type} or
+     * {@link JavaType}
+     */
+    private final ConcurrentMap<Object, ObjectReader> readers;
+
+    /**
+     * Writers by runtime class of serialized objects
+     */
+    private final ConcurrentMap<Class<?>, ObjectWriter> writers;
+
+    @Nullable
+    private final JacksonizerListener listener;
+
+    /**
+     * Results of {@link #encode(Object)} by identity of the encoded object,
+     * see {@link #withEncodingMemo(long)}
+     */
+    @Nullable
+    private final Cache<Object, EncodedJson> encodings;
+
+    /**
+     * Filter set into all readers, see {@link #withLocaleFilter(LocaleFilter)}
+     */
+    @Nullable
+    private final LocaleFilter localeFilter;
 
     private Jacksonizer(ObjectMapper objectMapper) {
-        this();
+        this(objectMapper, new ConcurrentHashMap<Object, ObjectReader>(),
+                new ConcurrentHashMap<Class<?>, ObjectWriter>(), null, null, null);
+    }
+
+    private Jacksonizer(ObjectMapper objectMapper, ConcurrentMap<Object, ObjectReader> readers,
+            ConcurrentMap<Class<?>, ObjectWriter> writers, @Nullable JacksonizerListener listener,
+            @Nullable Cache<Object, EncodedJson> encodings, @Nullable LocaleFilter localeFilter) {
         checkNotNull(objectMapper);
         this.objectMapper = objectMapper;
+        this.binary = objectMapper.getFactory().canHandleBinaryNatively();
+        this.readers = readers;
+        this.writers = writers;
+        this.listener = listener;
+        this.encodings = encodings;
+        this.localeFilter = localeFilter;
+    }
+
+    /**
+     * Receives the serialized bytes lent by
+     * {@link #withJsonBytes(Object, BytesCallback)}
+     *
+     * @since 2.0.0
+     */
+    public interface BytesCallback<R> {
+
+        /**
+         * Called with the {@code len} serialized bytes held in {@code bytes}
+         * from {@code offset}. The array is only lent for the duration of the
+         * call: it will be overwritten afterwards, so it must neither be
+         * modified nor kept.
+         */
+        R onBytes(byte[] bytes, int offset, int len) throws IOException;
+    }
+
+    private static final class PooledHolder {
+
+        static final Jacksonizer INSTANCE = new Jacksonizer(pooledMapper());
+    }
+
+    private static ObjectMapper defaultMapper() {
+        ObjectMapper ret = new ObjectMapper();
+        ret.registerModule(new GuavaModule());
+        ret.registerModule(new TodCommonsModule());
+        return ret;
+    }
+
+    private static ObjectMapper pooledMapper() {
+        ObjectMapper ret = new ObjectMapper(new PooledJsonFactory());
+        ret.registerModule(new GuavaModule());
+        ret.registerModule(new TodCommonsModule());
+        return ret;
     }
 
     /**
@@ -66,12 +225,182 @@ public final class Jacksonizer {
      * @return the provided object in JSON format
      * @throws IllegalArgumentException on json error.
      */
-    public String toJson(Object obj) {
+    public String toJson(@Nullable Object obj) {
+        checkTextual();
+        long start = start();
+        try {
+            String ret = writer(obj).writeValueAsString(obj);
+            serialized(obj, start, ret.length());
+            return ret;
+        }
+        catch (JsonProcessingException ex) {
+            throw serializeError(obj, start, ex);
+        }
+    }
+
+    /**
+     * Returns a UTF-8 encoded JSON representation of the provided object.
+     *
+     * @throws IllegalArgumentException on json error.
+     * @since 2.0.0
+     */
+    public byte[] toJsonBytes(@Nullable Object obj) {
+        long start = start();
         try {
-            return objectMapper.writeValueAsString(obj);
+            byte[] ret = writer(obj).writeValueAsBytes(obj);
+            serialized(obj, start, ret.length);
+            return ret;
         }
         catch (JsonProcessingException ex) {
-            throw new IllegalArgumentException("Couldn't serialize provided object!", ex);
+            throw serializeError(obj, start, ex);
+        }
+    }
+
+    /**
+     * Writes the UTF-8 encoded JSON representation of the provided object to
+     * the given stream. The stream is not closed.
+     *
+     * @throws IllegalArgumentException on json error or if the stream can't
+     * be written.
+     * @since 2.0.0
+     */
+    public void writeTo(@Nullable Object obj, OutputStream out) {
+        checkNotNull(out);
+        long start = start();
+        try {
+            if (listener == null) {
+                writer(obj).writeValue(out, obj);
+            } else {
+                CountingOutputStream counting = new CountingOutputStream(out);
+                writer(obj).writeValue(counting, obj);
+                serialized(obj, start, counting.getCount());
+            }
+        }
+        catch (IOException ex) {
+            throw serializeError(obj, start, ex);
+        }
+    }
+
+    /**
+     * Writes the JSON representation of the provided object to the given
+     * writer. The writer is not closed.
+     *
+     * @throws IllegalArgumentException on json error or if the writer can't
+     * be written.
+     * @since 2.0.0
+     */
+    public void writeTo(@Nullable Object obj, Writer writer) {
+        checkNotNull(writer);
+        checkTextual();
+        long start = start();
+        try {
+            writer(obj).writeValue(writer, obj);
+            serialized(obj, start, -1);
+        }
+        catch (IOException ex) {
+            throw serializeError(obj, start, ex);
+        }
+    }
+
+    /**
+     * Writes the UTF-8 encoded JSON representation of the provided object into
+     * the given buffer, starting at its current position. On success the
+     * position is advanced past the written bytes.
+     *
+     * @throws IllegalArgumentException on json error or if the buffer has not
+     * enough room.
+     * @since 2.0.0
+     */
+    public void writeTo(@Nullable Object obj, ByteBuffer buffer) {
+        checkNotNull(buffer);
+        long start = start();
+        int position = buffer.position();
+        try {
+            writer(obj).writeValue(new ByteBufferBackedOutputStream(buffer), obj);
+            serialized(obj, start, buffer.position() - position);
+        }
+        catch (IOException ex) {
+            throw serializeError(obj, start, ex);
+        }
+        catch (BufferOverflowException ex) {
+            failed(Operation.SERIALIZE, type(obj), start, ex);
+            throw new IllegalArgumentException("Not enough room in buffer to serialize provided object!", ex);
+        }
+    }
+
+    /**
+     * Serializes provided object to UTF-8 encoded JSON into a buffer reused
+     * by current thread and lends it to the callback, so no byte array is
+     * allocated nor copied. Useful to write the result to a channel or to a
+     * buffer of another library. To serialize into a {@link ByteBuffer} of
+     * yours see {@link #writeTo(Object, ByteBuffer)}.
+     *
+     * @return the result of the callback
+     * @throws IllegalArgumentException on json error or if the callback
+     * throws an {@link IOException}.
+     * @since 2.0.0
+     */
+    public <R> R withJsonBytes(@Nullable Object obj, BytesCallback<R> callback) {
+        checkNotNull(callback);
+        ReusableOutputStream out = ReusableOutputStream.acquire();
+        try {
+            long start = start();
+            try {
+                writer(obj).writeValue(out, obj);
+                serialized(obj, start, out.size());
+            }
+            catch (IOException ex) {
+                throw serializeError(obj, start, ex);
+            }
+            try {
+                return callback.onBytes(out.buffer(), 0, out.size());
+            }
+            catch (IOException ex) {
+                throw new IllegalArgumentException("Error while consuming serialized object!", ex);
+            }
+        }
+        finally {
+            out.release();
+        }
+    }
+
+    /**
+     * Serializes provided object to UTF-8 encoded JSON and hashes the bytes
+     * while they are written, i.e. to answer http requests with an ETag. If
+     * this Jacksonizer memoizes encodings (see
+     * {@link #withEncodingMemo(long)}) and the same object instance was
+     * already encoded, the previous result is returned without serializing
+     * nor hashing again.
+     *
+     * @throws IllegalArgumentException on json error.
+     * @since 2.0.0
+     */
+    public EncodedJson encode(@Nullable Object obj) {
+        long start = start();
+        boolean memo = encodings != null && obj != null;
+        if (memo) {
+            EncodedJson ret = encodings.getIfPresent(obj);
+            if (ret != null) {
+                serialized(obj, start, ret.size());
+                return ret;
+            }
+        }
+        ReusableOutputStream out = ReusableOutputStream.acquire();
+        try {
+            HashingOutputStream hashing = new HashingOutputStream(ENCODED_HASH, out);
+            writer(obj).writeValue(hashing, obj);
+            EncodedJson ret = new EncodedJson(Arrays.copyOf(out.buffer(), out.size()), hashing.hash());
+            serialized(obj, start, ret.size());
+            if (memo) {
+                encodings.put(obj, ret);
+            }
+            return ret;
+        }
+        catch (IOException ex) {
+            throw serializeError(obj, start, ex);
+        }
+        finally {
+            out.release();
         }
     }
 
@@ -80,20 +409,719 @@ public final class Jacksonizer {
      *
      * @param clazz the Java class of the object to reconstruct.
      *
-     * @throws IllegalArgumentException on json error.
+     * @throws IllegalArgumentException on json error. Since 2.0.0 the message
+     * only holds a short excerpt of the json around the error location.
      */
     public <T> T fromJson(String jsonString, Class<T> clazz) {
+        checkTextual();
+        long start = start();
         try {
-            return objectMapper.readValue(jsonString, clazz);
+            T ret = reader(clazz).readValue(jsonString);
+            deserialized(clazz, start, jsonString.length());
+            return ret;
         }
-        catch (JsonProcessingException ex) {
-            throw new IllegalArgumentException("Couldn't deserialize provided SemText json: " + jsonString, ex);
+        catch (IOException ex) {
+            failed(Operation.DESERIALIZE, clazz, start, ex);
+            throw fromJsonError(clazz, ex, jsonString);
+        }
+    }
+
+    /**
+     * Reconstructs an object of a possibly generic type from provided json
+     * representation, i.e.
+     * {@code fromJson(json, new TypeReference<List<Dict>>(){})}
+     *
+     * @throws IllegalArgumentException on json error.
+     * @since 2.0.0
+     */
+    public <T> T fromJson(String jsonString, TypeReference<T> typeRef) {
+        checkTextual();
+        long start = start();
+        try {
+            T ret = reader(typeRef).readValue(jsonString);
+            deserialized(typeRef.getType(), start, jsonString.length());
+            return ret;
         }
         catch (IOException ex) {
-            throw new IllegalArgumentException("Couldn't deserialize provided SemText json: " + jsonString, ex);
+            failed(Operation.DESERIALIZE, typeRef.getType(), start, ex);
+            throw fromJsonError(typeRef.getType(), ex, jsonString);
         }
     }
 
+    /**
+     * Reconstructs an object of provided type from provided json
+     * representation.
+     *
+     * @throws IllegalArgumentException on json error.
+     * @since 2.0.0
+     */
+    public <T> T fromJson(String jsonString, JavaType type) {
+        checkTextual();
+        long start = start();
+        try {
+            T ret = reader(type).readValue(jsonString);
+            deserialized(type, start, jsonString.length());
+            return ret;
+        }
+        catch (IOException ex) {
+            failed(Operation.DESERIALIZE, type, start, ex);
+            throw fromJsonError(type, ex, jsonString);
+        }
+    }
+
+    /**
+     * Reconstructs an object from provided UTF-8 (or UTF-16/32, auto-detected)
+     * json bytes.
+     *
+     * @param clazz the Java class of the object to reconstruct.
+     *
+     * @throws IllegalArgumentException on json error.
+     * @since 2.0.0
+     */
+    public <T> T fromJson(byte[] json, Class<T> clazz) {
+        return fromJson(json, 0, json.length, clazz);
+    }
+
+    /**
+     * Reconstructs an object from {@code len} json bytes of provided array
+     * starting at {@code offset}.
+     *
+     * @param clazz the Java class of the object to reconstruct.
+     *
+     * @throws IllegalArgumentException on json error, or if {@code offset}
+     * and {@code len} don't denote a range of the array.
+     * @since 2.0.0
+     */
+    public <T> T fromJson(byte[] json, int offset, int len, Class<T> clazz) {
+        checkArgument(offset >= 0 && len >= 0 && len <= json.length - offset,
+                "Invalid range of %s bytes from offset %s in array of length %s", len, offset, json.length);
+        long start = start();
+        try {
+            T ret = LazyDict.readBytes(reader(clazz), json, offset, len);
+            deserialized(clazz, start, len);
+            return ret;
+        }
+        catch (IOException ex) {
+            failed(Operation.DESERIALIZE, clazz, start, ex);
+            throw bytesError(clazz, ex, json, offset, len);
+        }
+    }
+
+    /**
+     * Reconstructs an object of a possibly generic type from provided json
+     * bytes.
+     *
+     * @throws IllegalArgumentException on json error.
+     * @since 2.0.0
+     */
+    public <T> T fromJson(byte[] json, TypeReference<T> typeRef) {
+        long start = start();
+        try {
+            T ret = LazyDict.<T>readBytes(reader(typeRef), json, 0, json.length);
+            deserialized(typeRef.getType(), start, json.length);
+            return ret;
+        }
+        catch (IOException ex) {
+            failed(Operation.DESERIALIZE, typeRef.getType(), start, ex);
+            throw bytesError(typeRef.getType(), ex, json, 0, json.length);
+        }
+    }
+
+    /**
+     * Reconstructs an object of provided type from provided json bytes.
+     *
+     * @throws IllegalArgumentException on json error.
+     * @since 2.0.0
+     */
+    public <T> T fromJson(byte[] json, JavaType type) {
+        long start = start();
+        try {
+            T ret = LazyDict.<T>readBytes(reader(type), json, 0, json.length);
+            deserialized(type, start, json.length);
+            return ret;
+        }
+        catch (IOException ex) {
+            failed(Operation.DESERIALIZE, type, start, ex);
+            throw bytesError(type, ex, json, 0, json.length);
+        }
+    }
+
+    /**
+     * Reconstructs an object from the json bytes between position and limit
+     * of provided buffer. The buffer position is not changed.
+     *
+     * @param clazz the Java class of the object to reconstruct.
+     *
+     * @throws IllegalArgumentException on json error.
+     * @since 2.0.0
+     */
+    public <T> T fromJson(ByteBuffer json, Class<T> clazz) {
+        if (json.hasArray()) {
+            return fromJson(json.array(), json.arrayOffset() + json.position(), json.remaining(), clazz);
+        }
+        return fromJson(new ByteBufferBackedInputStream(json.duplicate()), clazz);
+    }
+
+    /**
+     * Reconstructs an object reading json from provided stream. The stream is
+     * not closed.
+     *
+     * @param clazz the Java class of the object to reconstruct.
+     *
+     * @throws IllegalArgumentException on json error or if the stream can't
+     * be read.
+     * @since 2.0.0
+     */
+    public <T> T fromJson(InputStream in, Class<T> clazz) {
+        checkNotNull(in);
+        long start = start();
+        try {
+            if (listener == null) {
+                return reader(clazz).readValue(in);
+            }
+            CountingInputStream counting = new CountingInputStream(in);
+            T ret = reader(clazz).readValue(counting);
+            deserialized(clazz, start, counting.getCount());
+            return ret;
+        }
+        catch (IOException ex) {
+            failed(Operation.DESERIALIZE, clazz, start, ex);
+            throw fromJsonError(clazz, ex);
+        }
+    }
+
+    /**
+     * Reconstructs an object of a possibly generic type reading json from
+     * provided stream. The stream is not closed.
+     *
+     * @throws IllegalArgumentException on json error or if the stream can't
+     * be read.
+     * @since 2.0.0
+     */
+    public <T> T fromJson(InputStream in, TypeReference<T> typeRef) {
+        checkNotNull(in);
+        long start = start();
+        try {
+            if (listener == null) {
+                return reader(typeRef).readValue(in);
+            }
+            CountingInputStream counting = new CountingInputStream(in);
+            T ret = reader(typeRef).readValue(counting);
+            deserialized(typeRef.getType(), start, counting.getCount());
+            return ret;
+        }
+        catch (IOException ex) {
+            failed(Operation.DESERIALIZE, typeRef.getType(), start, ex);
+            throw fromJsonError(typeRef.getType(), ex);
+        }
+    }
+
+    /**
+     * Reconstructs an object of provided type reading json from provided
+     * stream. The stream is not closed.
+     *
+     * @throws IllegalArgumentException on json error or if the stream can't
+     * be read.
+     * @since 2.0.0
+     */
+    public <T> T fromJson(InputStream in, JavaType type) {
+        checkNotNull(in);
+        long start = start();
+        try {
+            if (listener == null) {
+                return reader(type).readValue(in);
+            }
+            CountingInputStream counting = new CountingInputStream(in);
+            T ret = reader(type).readValue(counting);
+            deserialized(type, start, counting.getCount());
+            return ret;
+        }
+        catch (IOException ex) {
+            failed(Operation.DESERIALIZE, type, start, ex);
+            throw fromJsonError(type, ex);
+        }
+    }
+
+    /**
+     * Reconstructs an object reading json from provided reader. The reader is
+     * not closed.
+     *
+     * @param clazz the Java class of the object to reconstruct.
+     *
+     * @throws IllegalArgumentException on json error or if the reader can't
+     * be read.
+     * @since 2.0.0
+     */
+    public <T> T fromJson(Reader reader, Class<T> clazz) {
+        checkNotNull(reader);
+        checkTextual();
+        long start = start();
+        try {
+            T ret = reader(clazz).readValue(reader);
+            deserialized(clazz, start, -1);
+            return ret;
+        }
+        catch (IOException ex) {
+            failed(Operation.DESERIALIZE, clazz, start, ex);
+            throw fromJsonError(clazz, ex);
+        }
+    }
+
+    /**
+     * Returns an iterator over the values of type {@code clazz} read one at a
+     * time from provided stream, so large collections can be processed in
+     * constant memory. Accepts both a sequence of root-level values (i.e.
+     * <a href="http://ndjson.org/" target="_blank">newline delimited json</a>)
+     * and a single top-level array. The same parser is used for all values.
+     *
+     * Errors while iterating are reported as
+     * {@link com.fasterxml.jackson.databind.RuntimeJsonMappingException}.
+     * Closing the iterator releases the parser, but the stream is left open.
+     *
+     * @throws IllegalArgumentException if reading couldn't start.
+     * @since 2.0.0
+     */
+    public <T> MappingIterator<T> readValues(InputStream in, Class<T> clazz) {
+        checkNotNull(in);
+        try {
+            return reader(clazz).readValues(in);
+        }
+        catch (IOException ex) {
+            throw fromJsonError(clazz, ex);
+        }
+    }
+
+    /**
+     * Returns an iterator over the values of type {@code clazz} read one at a
+     * time from provided reader.
+     *
+     * @see #readValues(InputStream, Class)
+     * @throws IllegalArgumentException if reading couldn't start.
+     * @since 2.0.0
+     */
+    public <T> MappingIterator<T> readValues(Reader reader, Class<T> clazz) {
+        checkNotNull(reader);
+        checkTextual();
+        try {
+            return reader(clazz).readValues(reader);
+        }
+        catch (IOException ex) {
+            throw fromJsonError(clazz, ex);
+        }
+    }
+
+    /**
+     * Returns the values of type {@code clazz} found at {@code path} in
+     * provided json, in document order, without deserializing the rest of
+     * the document. Json nulls are returned as nulls.
+     *
+     * @throws IllegalArgumentException on json error.
+     * @since 2.0.0
+     */
+    public <T> List<T> extract(String json, JsonExtractor path, Class<T> clazz) {
+        checkNotNull(path);
+        checkTextual();
+        long start = start();
+        try {
+            List<T> ret = extract(objectMapper.getFactory().createParser(json), path, clazz);
+            deserialized(clazz, start, json.length());
+            return ret;
+        }
+        catch (IOException ex) {
+            failed(Operation.DESERIALIZE, clazz, start, ex);
+            throw fromJsonError(clazz, ex, json);
+        }
+    }
+
+    /**
+     * Returns the values of type {@code clazz} found at {@code path} in
+     * provided json bytes, see {@link #extract(String, JsonExtractor, Class)}
+     *
+     * @throws IllegalArgumentException on json error.
+     * @since 2.0.0
+     */
+    public <T> List<T> extract(byte[] json, JsonExtractor path, Class<T> clazz) {
+        checkNotNull(path);
+        long start = start();
+        try {
+            List<T> ret = extract(objectMapper.getFactory().createParser(json), path, clazz);
+            deserialized(clazz, start, json.length);
+            return ret;
+        }
+        catch (IOException ex) {
+            failed(Operation.DESERIALIZE, clazz, start, ex);
+            throw bytesError(clazz, ex, json, 0, json.length);
+        }
+    }
+
+    /**
+     * Returns the values of type {@code clazz} found at {@code path} in json
+     * read from provided stream, see
+     * {@link #extract(String, JsonExtractor, Class)}. For paths without
+     * wildcards reading stops right after the match. The stream is not
+     * closed.
+     *
+     * @throws IllegalArgumentException on json error or if the stream can't
+     * be read.
+     * @since 2.0.0
+     */
+    public <T> List<T> extract(InputStream in, JsonExtractor path, Class<T> clazz) {
+        checkNotNull(in);
+        checkNotNull(path);
+        long start = start();
+        try {
+            if (listener == null) {
+                return extract(objectMapper.getFactory().createParser(in), path, clazz);
+            }
+            CountingInputStream counting = new CountingInputStream(in);
+            List<T> ret = extract(objectMapper.getFactory().createParser(counting), path, clazz);
+            deserialized(clazz, start, counting.getCount());
+            return ret;
+        }
+        catch (IOException ex) {
+            failed(Operation.DESERIALIZE, clazz, start, ex);
+            throw fromJsonError(clazz, ex);
+        }
+    }
+
+    private <T> List<T> extract(JsonParser parser, JsonExtractor path, Class<T> clazz) throws IOException {
+        parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        try {
+            List<T> ret = new ArrayList<T>();
+            path.extract(parser, reader(clazz), ret);
+            return ret;
+        }
+        finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Returns a writer of
+     * <a href="http://ndjson.org/" target="_blank">newline delimited json</a>
+     * to provided stream, one value per line. The same generator is used for
+     * all values. Closing the returned writer flushes it, but the stream is
+     * left open. For binary formats values are just concatenated, as they
+     * need no separator.
+     *
+     * @throws IllegalArgumentException if writing couldn't start.
+     * @since 2.0.0
+     */
+    public SequenceWriter writeValues(OutputStream out) {
+        checkNotNull(out);
+        try {
+            ObjectWriter writer = binary ? writer(null) : writer(null).withRootValueSeparator("\n");
+            return writer.writeValues(out);
+        }
+        catch (IOException ex) {
+            throw new IllegalArgumentException("Couldn't start writing json sequence!", ex);
+        }
+    }
+
+    /**
+     * Returns a writer of values as elements of a single json array to
+     * provided stream. The array is closed when the returned writer is
+     * closed, which leaves the stream open.
+     *
+     * @throws IllegalArgumentException if writing couldn't start.
+     * @since 2.0.0
+     */
+    public SequenceWriter writeValuesAsArray(OutputStream out) {
+        checkNotNull(out);
+        try {
+            return writer(null).writeValuesAsArray(out);
+        }
+        catch (IOException ex) {
+            throw new IllegalArgumentException("Couldn't start writing json array!", ex);
+        }
+    }
+
+    /**
+     * Returns the start time of an operation to report to the listener, if
+     * any.
+     */
+    private long start() {
+        return listener == null ? 0 : System.nanoTime();
+    }
+
+    private static Class<?> type(@Nullable Object obj) {
+        return obj == null ? Object.class : obj.getClass();
+    }
+
+    private void serialized(@Nullable Object obj, long start, long size) {
+        if (listener != null) {
+            listener.onSuccess(Operation.SERIALIZE, type(obj), System.nanoTime() - start, size);
+        }
+    }
+
+    private void deserialized(Object type, long start, long size) {
+        if (listener != null) {
+            listener.onSuccess(Operation.DESERIALIZE, type, System.nanoTime() - start, size);
+        }
+    }
+
+    private void failed(Operation operation, Object type, long start, Throwable error) {
+        if (listener != null) {
+            listener.onFailure(operation, type, System.nanoTime() - start, error);
+        }
+    }
+
+    private IllegalArgumentException serializeError(@Nullable Object obj, long start, IOException ex) {
+        failed(Operation.SERIALIZE, type(obj), start, ex);
+        return new IllegalArgumentException("Couldn't serialize provided object!", ex);
+    }
+
+    /**
+     * Builds the exception for a failed deserialization of a json whose text
+     * is not available, reporting target type and error location.
+     */
+    static IllegalArgumentException fromJsonError(Object type, IOException ex) {
+        return new IllegalArgumentException(errorHeader(type, ex).toString(), ex);
+    }
+
+    /**
+     * Builds the exception for a failed deserialization of provided json
+     * string, reporting target type, error location and an excerpt of the
+     * json around it.
+     */
+    static IllegalArgumentException fromJsonError(Object type, IOException ex, String json) {
+        StringBuilder sb = errorHeader(type, ex);
+        long charOffset = ex instanceof JsonProcessingException && ((JsonProcessingException) ex).getLocation() != null
+                ? ((JsonProcessingException) ex).getLocation().getCharOffset()
+                : -1;
+        if (charOffset >= 0 && charOffset <= json.length()) {
+            int pos = (int) charOffset;
+            int from = Math.max(0, pos - EXCERPT_RADIUS);
+            int to = Math.min(json.length(), pos + EXCERPT_RADIUS);
+            appendExcerpt(sb, json.substring(from, to), from > 0, to < json.length());
+        } else if (json.length() <= 2 * EXCERPT_RADIUS) {
+            appendExcerpt(sb, json, false, false);
+        }
+        return new IllegalArgumentException(sb.toString(), ex);
+    }
+
+    /**
+     * Builds the exception for a failed deserialization of {@code len} json
+     * bytes starting at {@code offset}, reporting target type, error location
+     * and an excerpt of the json around it.
+     */
+    static IllegalArgumentException fromJsonError(Object type, IOException ex, byte[] json, int offset, int len) {
+        StringBuilder sb = errorHeader(type, ex);
+        long byteOffset = ex instanceof JsonProcessingException && ((JsonProcessingException) ex).getLocation() != null
+                ? ((JsonProcessingException) ex).getLocation().getByteOffset()
+                : -1;
+        // byte offsets reported by parser are relative to the start of the json
+        int end = offset + len;
+        if (byteOffset >= 0 && byteOffset <= len) {
+            int pos = offset + (int) byteOffset;
+            int from = Math.max(offset, pos - EXCERPT_RADIUS);
+            int to = Math.min(end, pos + EXCERPT_RADIUS);
+            appendExcerpt(sb, new String(json, from, to - from, Charsets.UTF_8), from > offset, to < end);
+        } else if (len <= 2 * EXCERPT_RADIUS) {
+            appendExcerpt(sb, new String(json, offset, len, Charsets.UTF_8), false, false);
+        }
+        return new IllegalArgumentException(sb.toString(), ex);
+    }
+
+    /**
+     * Excerpts of binary formats would be unreadable, so they are only shown
+     * for textual ones.
+     */
+    private IllegalArgumentException bytesError(Object type, IOException ex, byte[] json, int offset, int len) {
+        return binary ? fromJsonError(type, ex) : fromJsonError(type, ex, json, offset, len);
+    }
+
+    private static StringBuilder errorHeader(Object type, IOException ex) {
+        StringBuilder sb = new StringBuilder("Couldn't deserialize json to ");
+        sb.append(type instanceof Class ? ((Class<?>) type).getName() : type);
+        if (ex instanceof JsonProcessingException) {
+            JsonLocation loc = ((JsonProcessingException) ex).getLocation();
+            if (loc != null) {
+                sb.append(" at line ").append(loc.getLineNr()).append(", column ").append(loc.getColumnNr());
+                if (loc.getByteOffset() >= 0) {
+                    sb.append(", byte offset ").append(loc.getByteOffset());
+                }
+                if (loc.getCharOffset() >= 0) {
+                    sb.append(", char offset ").append(loc.getCharOffset());
+                }
+            }
+            sb.append(": ").append(((JsonProcessingException) ex).getOriginalMessage());
+        } else {
+            sb.append(": ").append(ex.getMessage());
+        }
+        return sb;
+    }
+
+    private static void appendExcerpt(StringBuilder sb, String excerpt, boolean truncatedStart, boolean truncatedEnd) {
+        sb.append("\n  json excerpt: ");
+        if (truncatedStart) {
+            sb.append("...");
+        }
+        sb.append(excerpt);
+        if (truncatedEnd) {
+            sb.append("...");
+        }
+    }
+
+    void checkTextual() {
+        checkState(!binary, "Jacksonizer for binary format %s only supports bytes and streams!",
+                objectMapper.getFactory().getFormatName());
+    }
+
+    /**
+     * Eagerly prepares the readers and writers of this Jacksonizer for Tod
+     * commons types, and the (de)serializers of the wrapped mapper for them
+     * and their common collections (see
+     * {@link TodCommonsModule#warmUp(ObjectMapper)}), so first calls don't
+     * pay for their construction. Useful when startup time matters.
+     *
+     * @return the nanoseconds spent warming up
+     * @since 2.0.0
+     */
+    public long warmUp() {
+        long start = System.nanoTime();
+        TodCommonsModule.warmUp(objectMapper);
+        for (Class<?> clazz : TodCommonsModule.WARM_UP_TYPES) {
+            reader(clazz);
+            writerFor(clazz);
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Returns a cached writer for the runtime class of provided object. The
+     * writer leaves caller streams open.
+     */
+    private ObjectWriter writer(@Nullable Object obj) {
+        return writerFor(type(obj));
+    }
+
+    private ObjectWriter writerFor(Class<?> clazz) {
+        ObjectWriter writer = writers.get(clazz);
+        if (writer == null) {
+            writer = objectMapper.writerFor(clazz).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            if (writers.size() < MAX_CACHED_TYPES) {
+                writers.putIfAbsent(clazz, writer);
+            }
+        }
+        return writer;
+    }
+
+    ObjectReader reader(Class<?> clazz) {
+        ObjectReader reader = readers.get(clazz);
+        if (reader == null) {
+            reader = cacheReader(clazz, objectMapper.readerFor(clazz));
+        }
+        return reader;
+    }
+
+    private ObjectReader reader(TypeReference<?> typeRef) {
+        ObjectReader reader = readers.get(typeRef.getType());
+        if (reader == null) {
+            reader = cacheReader(typeRef.getType(), objectMapper.readerFor(typeRef));
+        }
+        return reader;
+    }
+
+    private ObjectReader reader(JavaType type) {
+        ObjectReader reader = readers.get(type);
+        if (reader == null) {
+            reader = cacheReader(type, objectMapper.readerFor(type));
+        }
+        return reader;
+    }
+
+    /**
+     * Configures the reader to leave caller streams open and to apply the
+     * locale filter, if any, and caches it
+     */
+    private ObjectReader cacheReader(Object key, ObjectReader reader) {
+        ObjectReader ret = reader.without(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        if (localeFilter != null) {
+            ret = localeFilter.applyTo(ret);
+        }
+        if (readers.size() < MAX_CACHED_TYPES) {
+            readers.putIfAbsent(key, ret);
+        }
+        return ret;
+    }
+
+    /**
+     * Returns a Jacksonizer with the same mapper (and cached readers and
+     * writers) of this one, which reports each serialization and
+     * deserialization to provided listener, i.e. a
+     * {@link JacksonizerMetrics}. Sequences read with {@code readValues} and
+     * written with {@code writeValues} are not reported.
+     *
+     * @since 2.0.0
+     */
+    public Jacksonizer withListener(JacksonizerListener listener) {
+        checkNotNull(listener);
+        return new Jacksonizer(objectMapper, readers, writers, listener, encodings, localeFilter);
+    }
+
+    /**
+     * Returns a Jacksonizer with the same mapper (and cached readers and
+     * writers) of this one, whose {@link #encode(Object)} remembers results
+     * by identity of the encoded objects, for a total of at most about
+     * {@code maxBytes}. Only use it to encode immutable objects, as later
+     * changes to an encoded object wouldn't be seen. Objects are not kept
+     * alive by the memo, and the least recently used results are evicted
+     * first.
+     *
+     * @since 2.0.0
+     */
+    public Jacksonizer withEncodingMemo(long maxBytes) {
+        checkArgument(maxBytes > 0, "Max bytes must be positive, found instead %s", maxBytes);
+        Cache<Object, EncodedJson> memo = CacheBuilder.newBuilder()
+                .weakKeys()
+                .maximumWeight(maxBytes)
+                .weigher(new Weigher<Object, EncodedJson>() {
+                    @Override
+                    public int weigh(Object key, EncodedJson value) {
+                        return value.size();
+                    }
+                })
+                .recordStats()
+                .build();
+        return new Jacksonizer(objectMapper, readers, writers, listener, memo, localeFilter);
+    }
+
+    /**
+     * Returns hits, misses and evictions of the memo of
+     * {@link #encode(Object)} results, all zero if there is none.
+     *
+     * @see #withEncodingMemo(long)
+     * @since 2.0.0
+     */
+    public CacheStats getEncodingMemoStats() {
+        return encodings == null ? new CacheStats(0, 0, 0, 0, 0, 0) : encodings.stats();
+    }
+
+    /**
+     * Returns a Jacksonizer with the same mapper and writers of this one,
+     * which when reading {@code Dict}, {@link LazyDict} and
+     * {@code LocalizedString} only keeps the locales of provided filter,
+     * skipping the others while parsing. Readers are not shared with this
+     * Jacksonizer, so keep the returned one instead of calling this method
+     * for each read.
+     *
+     * @since 2.0.0
+     */
+    public Jacksonizer withLocaleFilter(LocaleFilter localeFilter) {
+        checkNotNull(localeFilter);
+        return new Jacksonizer(objectMapper, new ConcurrentHashMap<Object, ObjectReader>(), writers, listener,
+                encodings, localeFilter);
+    }
+
+    /**
+     * @since 2.0.0
+     */
+    @Nullable
+    public LocaleFilter getLocaleFilter() {
+        return localeFilter;
+    }
+
     /**
      * Factory method, returning the Jacksonizer already configured for Tod
      * commons objects.
@@ -103,10 +1131,64 @@ public final class Jacksonizer {
     }
 
     /**
-     * Factory method which returns the Jacksonizer wrapping the provided
-     * object mapper.
+     * Returns a Jacksonizer configured for Tod commons objects which reads
+     * and writes <a href="https://github.com/FasterXML/smile-format-specification" target="_blank">Smile</a>,
+     * a binary json format. Repeated field names and short string values are
+     * written as back references. Requires {@code jackson-dataformat-smile} in
+     * the classpath.
+     *
+     * @since 2.0.0
+     */
+    public static Jacksonizer ofSmile() {
+        return SmileSupport.INSTANCE;
+    }
+
+    /**
+     * Returns a Jacksonizer configured for Tod commons objects which reads
+     * and writes <a href="http://cbor.io/" target="_blank">CBOR</a>. Requires
+     * {@code jackson-dataformat-cbor} in the classpath.
+     *
+     * @since 2.0.0
+     */
+    public static Jacksonizer ofCbor() {
+        return CborSupport.INSTANCE;
+    }
+
+    /**
+     * Returns a Jacksonizer configured for Tod commons objects like
+     * {@link #of()}, whose parsers and generators take their buffers from a
+     * pool shared by all threads (see {@link PooledJsonFactory}). To be
+     * preferred when calls are made by many short lived threads, i.e. with a
+     * new thread per task.
+     *
+     * @since 2.0.0
+     */
+    public static Jacksonizer ofPooledBuffers() {
+        return PooledHolder.INSTANCE;
+    }
+
+    /**
+     * Factory method which returns a new Jacksonizer wrapping the provided
+     * object mapper. Creation is cheap, but readers and writers cached by the
+     * returned instance won't be shared with other ones: if you create
+     * Jacksonizers for the same mapper over and over consider using
+     * {@link #ofShared(ObjectMapper)}
      */
     public static Jacksonizer of(ObjectMapper objectMapper) {
         return new Jacksonizer(objectMapper);
     }
+
+    /**
+     * Factory method which returns the Jacksonizer wrapping the provided
+     * object mapper, reusing the same instance (and its cached readers and
+     * writers) for the same mapper. Mappers are compared by identity. At most
+     * the 64 most recently used mappers are remembered, and they are kept
+     * alive until discarded, so only pass long lived mappers.
+     *
+     * @since 2.0.0
+     */
+    public static Jacksonizer ofShared(ObjectMapper objectMapper) {
+        checkNotNull(objectMapper);
+        return SHARED.getUnchecked(objectMapper);
+    }
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.commons.jackson;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * Receives a notification after each serialization or deserialization done
+ * by a {@link Jacksonizer}, see {@link Jacksonizer#withListener(JacksonizerListener)}.
+ *
+ * Listeners are called on the thread doing the work, so they must be thread
+ * safe and fast. They should not throw.
+ *
+ * @see JacksonizerMetrics
+ * @since 2.0.0
+ */
+@Beta
+public interface JacksonizerListener {
+
+    enum Operation {
+        SERIALIZE, DESERIALIZE
+    }
+
+    /**
+     * Called after a successful operation.
+     *
+     * @param type the {@link Class}, {@link java.lang.reflect.Type} or
+     * {@link com.fasterxml.jackson.databind.JavaType} being (de)serialized.
+     * For serialization it is the runtime class of the object.
+     * @param nanos the time spent
+     * @param size the size of the payload in bytes, or in chars for strings,
+     * readers and writers. -1 if not known.
+     */
+    void onSuccess(Operation operation, Object type, long nanos, long size);
+
+    /**
+     * Called after a failed operation, before the error is thrown to the
+     * caller.
+     *
+     * @param type see {@link #onSuccess(Operation, Object, long, long)}
+     * @param nanos the time spent until the failure
+     * @param error the cause of the failure
+     */
+    void onFailure(Operation operation, Object type, long nanos, Throwable error);
+}
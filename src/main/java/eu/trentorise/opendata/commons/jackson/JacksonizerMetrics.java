@@ -0,0 +1,232 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.commons.jackson;
+
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * In memory {@link JacksonizerListener} which keeps, for each operation and
+ * type, counts, failures, total time and size and histograms of latencies and
+ * sizes. Updates are lock free.
+ *
+ * Histograms have power of two buckets: bucket {@code i} counts the values
+ * {@code v} with {@code 2^(i-1) <= v < 2^i}, bucket 0 counts zeros and
+ * unknown sizes.
+ *
+ * Stats are plain beans, so they can be exported i.e. as json with
+ * {@code Jacksonizer.of().toJson(metrics.getStats())}
+ *
+ * @since 2.0.0
+ */
+@Beta
+@ThreadSafe
+public final class JacksonizerMetrics implements JacksonizerListener {
+
+    /**
+     * Past this number of types new ones are all accounted in a single
+     * {@link #OTHER_TYPES} entry, so metrics can't grow forever.
+     */
+    private static final int MAX_TYPES = 1000;
+
+    /**
+     * Type name for stats of types exceeding {@link #MAX_TYPES}
+     */
+    public static final String OTHER_TYPES = "<other>";
+
+    private static final int BUCKETS = 64;
+
+    private final ConcurrentMap<Operation, ConcurrentMap<Object, Stats>> stats;
+
+    /**
+     * Counters for an operation on a type.
+     */
+    @ThreadSafe
+    public static final class Stats {
+
+        private final Operation operation;
+        private final String type;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong totalSize = new AtomicLong();
+        private final AtomicLongArray nanosHistogram = new AtomicLongArray(BUCKETS);
+        private final AtomicLongArray sizeHistogram = new AtomicLongArray(BUCKETS);
+
+        private Stats(Operation operation, String type) {
+            this.operation = operation;
+            this.type = type;
+        }
+
+        private void success(long nanos, long size) {
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            nanosHistogram.incrementAndGet(bucket(nanos));
+            if (size > 0) {
+                totalSize.addAndGet(size);
+            }
+            sizeHistogram.incrementAndGet(bucket(size));
+        }
+
+        private void failure(long nanos) {
+            count.incrementAndGet();
+            failures.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            nanosHistogram.incrementAndGet(bucket(nanos));
+        }
+
+        public Operation getOperation() {
+            return operation;
+        }
+
+        /**
+         * The name of the (de)serialized type
+         */
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * Number of calls, including failed ones
+         */
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getFailures() {
+            return failures.get();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.get();
+        }
+
+        /**
+         * Total of known payload sizes
+         */
+        public long getTotalSize() {
+            return totalSize.get();
+        }
+
+        /**
+         * Counts of calls by power of two buckets of nanoseconds. Trailing
+         * empty buckets are omitted.
+         */
+        public List<Long> getNanosHistogram() {
+            return toList(nanosHistogram);
+        }
+
+        /**
+         * Counts of successful calls by power of two buckets of payload
+         * size. Trailing empty buckets are omitted.
+         */
+        public List<Long> getSizeHistogram() {
+            return toList(sizeHistogram);
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" + "operation=" + operation + ", type=" + type + ", count=" + getCount()
+                    + ", failures=" + getFailures() + ", totalNanos=" + getTotalNanos()
+                    + ", totalSize=" + getTotalSize() + '}';
+        }
+    }
+
+    public JacksonizerMetrics() {
+        stats = new ConcurrentHashMap<Operation, ConcurrentMap<Object, Stats>>();
+        for (Operation op : Operation.values()) {
+            stats.put(op, new ConcurrentHashMap<Object, Stats>());
+        }
+    }
+
+    @Override
+    public void onSuccess(Operation operation, Object type, long nanos, long size) {
+        stats(operation, type).success(nanos, size);
+    }
+
+    @Override
+    public void onFailure(Operation operation, Object type, long nanos, Throwable error) {
+        stats(operation, type).failure(nanos);
+    }
+
+    /**
+     * Returns the stats of all operations and types seen so far. Returned
+     * stats keep being updated.
+     */
+    public List<Stats> getStats() {
+        List<Stats> ret = new ArrayList<Stats>();
+        for (Operation op : Operation.values()) {
+            ret.addAll(stats.get(op).values());
+        }
+        return ret;
+    }
+
+    /**
+     * Forgets all stats collected so far.
+     */
+    public void reset() {
+        for (Operation op : Operation.values()) {
+            stats.get(op).clear();
+        }
+    }
+
+    private Stats stats(Operation operation, Object type) {
+        ConcurrentMap<Object, Stats> map = stats.get(operation);
+        Stats ret = map.get(type);
+        if (ret == null) {
+            Object key = map.size() < MAX_TYPES ? type : OTHER_TYPES;
+            ret = map.get(key);
+            if (ret == null) {
+                Stats newStats = new Stats(operation, typeName(key));
+                ret = map.putIfAbsent(key, newStats);
+                if (ret == null) {
+                    ret = newStats;
+                }
+            }
+        }
+        return ret;
+    }
+
+    private static String typeName(Object type) {
+        return type instanceof Class ? ((Class<?>) type).getName() : type.toString();
+    }
+
+    /**
+     * Returns the power of two bucket of provided value
+     */
+    static int bucket(long value) {
+        return value <= 0 ? 0 : BUCKETS - Long.numberOfLeadingZeros(value);
+    }
+
+    private static List<Long> toList(AtomicLongArray histogram) {
+        int last = histogram.length() - 1;
+        while (last >= 0 && histogram.get(last) == 0) {
+            last--;
+        }
+        ImmutableList.Builder<Long> ret = ImmutableList.builder();
+        for (int i = 0; i <= last; i++) {
+            ret.add(histogram.get(i));
+        }
+        return ret.build();
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.commons.jackson;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableList;
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.io.IOException;
+import java.util.List;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * A path to values inside json documents, compiled once and then used to
+ * extract the matching values with the {@code extract} methods of
+ * {@link Jacksonizer} without deserializing whole documents: the token stream
+ * is scanned and subtrees not on the path are skipped.
+ *
+ * Two syntaxes are supported:
+ * <ul>
+ * <li><a href="https://tools.ietf.org/html/rfc6901" target="_blank">JSON
+ * Pointer</a>, i.e. {@code /it/0} for the first Italian string of a
+ * {@code Dict}. The empty string points to the whole document.</li>
+ * <li>a subset of <a href="http://goessner.net/articles/JsonPath/"
+ * target="_blank">JSONPath</a> made of {@code $} followed by field names
+ * ({@code .name} or {@code ['name']}), array indexes ({@code [0]}) and
+ * wildcards ({@code .*} or {@code [*]}), i.e. {@code $.items[*].name.en}.
+ * Recursive descent, filters, slices and unions are not supported.</li>
+ * </ul>
+ *
+ * Paths without wildcards match at most one value, so scanning stops right
+ * after it is found.
+ *
+ * @since 2.0.0
+ */
+@ParametersAreNonnullByDefault
+@Immutable
+@Beta
+public final class JsonExtractor {
+
+    /**
+     * A step of the path, matching object fields or array elements.
+     */
+    @Immutable
+    private static final class Step {
+
+        @Nullable
+        private final String name;
+        private final int index;
+        private final boolean wildcard;
+
+        private Step(@Nullable String name, int index, boolean wildcard) {
+            this.name = name;
+            this.index = index;
+            this.wildcard = wildcard;
+        }
+
+        boolean matchesField(String fieldName) {
+            return wildcard || fieldName.equals(name);
+        }
+
+        boolean matchesIndex(int i) {
+            return wildcard || i == index;
+        }
+    }
+
+    private final String expression;
+    private final ImmutableList<Step> steps;
+    private final boolean definite;
+
+    private JsonExtractor(String expression, ImmutableList<Step> steps) {
+        this.expression = expression;
+        this.steps = steps;
+        boolean wildcards = false;
+        for (Step step : steps) {
+            wildcards |= step.wildcard;
+        }
+        this.definite = !wildcards;
+    }
+
+    /**
+     * Compiles a JSON Pointer (empty or starting with '/') or a JSONPath
+     * (starting with '$').
+     *
+     * @throws IllegalArgumentException if the expression is not valid or uses
+     * unsupported JSONPath features.
+     */
+    public static JsonExtractor compile(String expression) {
+        checkNotNull(expression);
+        if (expression.isEmpty() || expression.startsWith("/")) {
+            return new JsonExtractor(expression, pointerSteps(expression));
+        }
+        if (expression.startsWith("$")) {
+            return new JsonExtractor(expression, pathSteps(expression));
+        }
+        throw new IllegalArgumentException("Expected a JSON Pointer starting with '/' or a JSONPath starting with '$',"
+                + " found instead " + expression);
+    }
+
+    private static ImmutableList<Step> pointerSteps(String expression) {
+        ImmutableList.Builder<Step> ret = ImmutableList.builder();
+        for (JsonPointer ptr = JsonPointer.compile(expression); !ptr.matches(); ptr = ptr.tail()) {
+            ret.add(new Step(ptr.getMatchingProperty(), ptr.getMatchingIndex(), false));
+        }
+        return ret.build();
+    }
+
+    private static ImmutableList<Step> pathSteps(String expression) {
+        ImmutableList.Builder<Step> ret = ImmutableList.builder();
+        int i = 1;
+        int len = expression.length();
+        while (i < len) {
+            char c = expression.charAt(i);
+            if (c == '.') {
+                int start = i + 1;
+                int end = start;
+                while (end < len && expression.charAt(end) != '.' && expression.charAt(end) != '[') {
+                    end++;
+                }
+                if (end == start) {
+                    throw pathError(expression, i, "recursive descent and empty field names are not supported");
+                }
+                String name = expression.substring(start, end);
+                ret.add("*".equals(name) ? new Step(null, -1, true) : new Step(name, -1, false));
+                i = end;
+            } else if (c == '[') {
+                int close = expression.indexOf(']', i);
+                if (close < 0) {
+                    throw pathError(expression, i, "missing ']'");
+                }
+                String content = expression.substring(i + 1, close);
+                if ("*".equals(content)) {
+                    ret.add(new Step(null, -1, true));
+                } else if (content.length() >= 2
+                        && (content.charAt(0) == '\'' || content.charAt(0) == '"')
+                        && content.charAt(content.length() - 1) == content.charAt(0)) {
+                    String name = content.substring(1, content.length() - 1);
+                    if (name.indexOf('\'') >= 0 || name.indexOf('"') >= 0) {
+                        throw pathError(expression, i, "multiple or quoted field names are not supported");
+                    }
+                    ret.add(new Step(name, -1, false));
+                } else if (content.matches("0|[1-9][0-9]{0,8}")) {
+                    ret.add(new Step(null, Integer.parseInt(content), false));
+                } else {
+                    throw pathError(expression, i, "only field names, indexes and '*' are supported in brackets");
+                }
+                i = close + 1;
+            } else {
+                throw pathError(expression, i, "expected '.' or '['");
+            }
+        }
+        return ret.build();
+    }
+
+    private static IllegalArgumentException pathError(String expression, int pos, String reason) {
+        return new IllegalArgumentException("Invalid JSONPath " + expression + " at position " + pos + ": " + reason);
+    }
+
+    /**
+     * Reads the document from provided parser, which must not have been
+     * advanced yet, and adds the values matching this path to {@code values}
+     * in document order. Json nulls are added as nulls.
+     */
+    <T> void extract(JsonParser parser, ObjectReader reader, List<T> values) throws IOException {
+        if (parser.nextToken() != null) {
+            match(parser, 0, reader, values);
+        }
+    }
+
+    /**
+     * Matches the value at current token against the steps from
+     * {@code step}, leaving the parser on its last token.
+     *
+     * @return true if scanning can stop
+     */
+    private <T> boolean match(JsonParser parser, int step, ObjectReader reader, List<T> values) throws IOException {
+        if (step == steps.size()) {
+            values.add(reader.<T>readValue(parser));
+            return definite;
+        }
+        Step s = steps.get(step);
+        JsonToken token = parser.getCurrentToken();
+        if (token == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                parser.nextToken();
+                if (s.matchesField(fieldName)) {
+                    if (match(parser, step + 1, reader, values) || definite) {
+                        return true;
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } else if (token == JsonToken.START_ARRAY) {
+            int i = 0;
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                if (s.matchesIndex(i)) {
+                    if (match(parser, step + 1, reader, values) || definite) {
+                        return true;
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+                i++;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the expression this extractor was compiled from.
+     */
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
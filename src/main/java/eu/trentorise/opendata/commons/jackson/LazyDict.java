@@ -0,0 +1,457 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.commons.jackson;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.json.UTF8StreamJsonParser;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import eu.trentorise.opendata.commons.Dict;
+import eu.trentorise.opendata.commons.LocalizedString;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Read only view of a {@link Dict} read from json bytes, which decodes the
+ * strings of a locale only when they are first asked for. Meant for
+ * multilingual datasets where most readers only look at one or two of many
+ * locales. Since {@code Dict} is final this is a separate type: declare
+ * {@code LazyDict} fields in place of {@code Dict} ones, and call
+ * {@link #toDict()} to get a full dict.
+ *
+ * When read by {@link TodCommonsModule} from json bytes through the
+ * {@code fromJson(byte[], ...)} methods of {@link Jacksonizer}, the
+ * deserializer only scans the object, keeping a copy of its bytes and the
+ * offset of each locale key. Strings and text of other sources are instead
+ * decoded eagerly, as are dicts given by field name or read through plain
+ * object mappers, which don't tell where parsed bytes start.
+ *
+ * Decoded locales and the full dict are cached, so accessing them again
+ * costs nothing. Equality and hash code are those of the full dict.
+ *
+ * @since 2.0.0
+ */
+@Beta
+@Immutable
+public final class LazyDict {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final LazyDict EMPTY = new LazyDict(Dict.of());
+
+    /**
+     * Bytes of the json object, null if the dict was decoded eagerly
+     */
+    @Nullable
+    private final byte[] json;
+
+    /**
+     * Locale of each key, in document order. May contain duplicates.
+     */
+    private final Locale[] keyLocales;
+
+    /**
+     * Offset in {@code json} of each key
+     */
+    private final int[] keyOffsets;
+
+    private final ImmutableSet<Locale> locales;
+
+    /**
+     * Decoded strings of each key, racily initialized as lists are
+     * immutable.
+     */
+    private final AtomicReferenceArray<ImmutableList<String>> decoded;
+
+    @Nullable
+    private volatile Dict dict;
+
+    private LazyDict(byte[] json, Locale[] keyLocales, int[] keyOffsets) {
+        this.json = json;
+        this.keyLocales = keyLocales;
+        this.keyOffsets = keyOffsets;
+        this.locales = ImmutableSet.copyOf(keyLocales);
+        this.decoded = new AtomicReferenceArray<ImmutableList<String>>(keyLocales.length);
+    }
+
+    private LazyDict(Dict dict) {
+        this.json = null;
+        this.keyLocales = new Locale[0];
+        this.keyOffsets = new int[0];
+        this.locales = dict.locales();
+        this.decoded = new AtomicReferenceArray<ImmutableList<String>>(0);
+        this.dict = dict;
+    }
+
+    /**
+     * Returns a view of an already decoded dict.
+     */
+    public static LazyDict of(Dict dict) {
+        checkNotNull(dict);
+        return dict.isEmpty() ? EMPTY : new LazyDict(dict);
+    }
+
+    /**
+     * Returns a lazy dict of the json object made of {@code len} bytes of
+     * provided array starting at {@code offset}, in the formats accepted by
+     * {@link TodCommonsModule.DictDeserializer}. Bytes are copied.
+     *
+     * @throws IllegalArgumentException if bytes are not a valid json dict, or
+     * the range is outside the array.
+     */
+    public static LazyDict of(byte[] json, int offset, int len) {
+        checkArgument(offset >= 0 && len >= 0 && len <= json.length - offset,
+                "Invalid range of %s bytes from offset %s in array of length %s", len, offset, json.length);
+        try {
+            JsonParser jp = JSON_FACTORY.createParser(json, offset, len);
+            try {
+                if (jp.nextToken() != JsonToken.START_OBJECT) {
+                    throw new IllegalArgumentException("Expected a json object for a Dict, found instead "
+                            + jp.getCurrentToken());
+                }
+                LazyDict ret = scan(jp, json, offset, null);
+                if (jp.nextToken() != null) {
+                    throw new IllegalArgumentException("Found trailing token after json Dict: "
+                            + jp.getCurrentToken());
+                }
+                return ret;
+            }
+            finally {
+                jp.close();
+            }
+        }
+        catch (IOException ex) {
+            throw new IllegalArgumentException("Invalid json Dict!", ex);
+        }
+    }
+
+    /**
+     * Scans the json object starting at current token of provided parser,
+     * which reads {@code source} from {@code sourceOffset}, leaving the
+     * parser on the closing token. Only string and array values are checked,
+     * strings are not decoded. Locales not kept by {@code filter} are
+     * skipped, except the best fallback if no locale is kept.
+     */
+    private static LazyDict scan(JsonParser jp, byte[] source, int sourceOffset, @Nullable LocaleFilter filter)
+            throws IOException {
+        int start = sourceOffset + (int) jp.getTokenLocation().getByteOffset();
+        List<Locale> keyLocales = new ArrayList<Locale>();
+        int[] keyOffsets = new int[8];
+        Locale fallbackLocale = null;
+        int fallbackOffset = -1;
+        int fallbackRank = Integer.MAX_VALUE;
+        JsonToken t;
+        while ((t = jp.nextToken()) == JsonToken.FIELD_NAME) {
+            Locale locale = LocaleCache.get(jp.getCurrentName());
+            int keyOffset = sourceOffset + (int) jp.getTokenLocation().getByteOffset() - start;
+            t = jp.nextToken();
+            boolean kept = filter == null || filter.keeps(locale);
+            int rank = kept || !keyLocales.isEmpty() ? -1 : filter.fallbackRank(locale);
+            if (!kept && (rank < 0 || rank >= fallbackRank)) {
+                jp.skipChildren();
+                continue;
+            }
+            if (t == JsonToken.START_ARRAY) {
+                t = jp.nextToken();
+                if (t == JsonToken.END_ARRAY) {
+                    // empty locales are not part of the dict
+                    continue;
+                }
+                for (; t != JsonToken.END_ARRAY; t = jp.nextToken()) {
+                    if (t != JsonToken.VALUE_STRING) {
+                        throw new JsonParseException("Error while parsing Dict! Expected a string, found instead token "
+                                + t, jp.getCurrentLocation());
+                    }
+                }
+            } else if (t != JsonToken.VALUE_STRING) {
+                throw new JsonParseException("Expected string or array of strings for locale " + locale
+                        + ", found instead " + t, jp.getCurrentLocation());
+            }
+            if (!kept) {
+                fallbackLocale = locale;
+                fallbackOffset = keyOffset;
+                fallbackRank = rank;
+                continue;
+            }
+            if (keyLocales.size() == keyOffsets.length) {
+                keyOffsets = Arrays.copyOf(keyOffsets, keyOffsets.length * 2);
+            }
+            keyOffsets[keyLocales.size()] = keyOffset;
+            keyLocales.add(locale);
+        }
+        if (t != JsonToken.END_OBJECT) {
+            throw new JsonParseException("Error while parsing Dict! Expected a locale key, found instead token " + t,
+                    jp.getCurrentLocation());
+        }
+        if (keyLocales.isEmpty()) {
+            if (fallbackLocale == null) {
+                return EMPTY;
+            }
+            keyLocales.add(fallbackLocale);
+            keyOffsets[0] = fallbackOffset;
+        }
+        int end = sourceOffset + (int) jp.getCurrentLocation().getByteOffset();
+        return new LazyDict(Arrays.copyOfRange(source, start, end), keyLocales.toArray(new Locale[0]),
+                Arrays.copyOf(keyOffsets, keyLocales.size()));
+    }
+
+    /**
+     * Reads a lazy dict at current token of provided parser if it is the
+     * start of an object within the bytes registered by
+     * {@link #readBytes(ObjectReader, byte[], int, int)}, otherwise returns
+     * null and leaves the parser untouched.
+     *
+     * @param filter if not null, locales it doesn't keep are skipped
+     */
+    @Nullable
+    static LazyDict read(JsonParser jp, @Nullable LocaleFilter filter) throws IOException {
+        Source source = SOURCE.get();
+        if (source.bytes == null || jp.getCurrentToken() != JsonToken.START_OBJECT
+                || !(jp instanceof UTF8StreamJsonParser)
+                || jp.getTokenLocation().getSourceRef() != source.bytes) {
+            return null;
+        }
+        return scan(jp, source.bytes, source.offset, filter);
+    }
+
+    /**
+     * The json bytes being read by current thread, as parsers only tell
+     * offsets relative to the start of their input.
+     */
+    private static final class Source {
+
+        @Nullable
+        private byte[] bytes;
+        private int offset;
+    }
+
+    private static final ThreadLocal<Source> SOURCE = new ThreadLocal<Source>() {
+        @Override
+        protected Source initialValue() {
+            return new Source();
+        }
+    };
+
+    /**
+     * Reads a value with provided reader from {@code len} bytes of
+     * {@code json} starting at {@code offset}, letting lazy dicts found in
+     * it keep their bytes.
+     */
+    static <T> T readBytes(ObjectReader reader, byte[] json, int offset, int len) throws IOException {
+        Source source = SOURCE.get();
+        byte[] prevBytes = source.bytes;
+        int prevOffset = source.offset;
+        source.bytes = json;
+        source.offset = offset;
+        try {
+            return reader.readValue(json, offset, len);
+        }
+        finally {
+            source.bytes = prevBytes;
+            source.offset = prevOffset;
+        }
+    }
+
+    /**
+     * Returns the strings of key {@code i}, decoding them if needed.
+     */
+    private ImmutableList<String> decode(int i) {
+        ImmutableList<String> ret = decoded.get(i);
+        if (ret != null) {
+            return ret;
+        }
+        // skips key and colon, which scan found to be well formed
+        int pos = keyOffsets[i] + 1;
+        while (json[pos] != '"') {
+            pos += json[pos] == '\\' ? 2 : 1;
+        }
+        pos++;
+        while (json[pos] != ':') {
+            pos++;
+        }
+        pos++;
+        try {
+            JsonParser jp = JSON_FACTORY.createParser(json, pos, json.length - pos);
+            try {
+                if (jp.nextToken() == JsonToken.VALUE_STRING) {
+                    ret = ImmutableList.of(jp.getText());
+                } else {
+                    ImmutableList.Builder<String> builder = ImmutableList.builder();
+                    while (jp.nextToken() == JsonToken.VALUE_STRING) {
+                        builder.add(jp.getText());
+                    }
+                    ret = builder.build();
+                }
+            }
+            finally {
+                jp.close();
+            }
+        }
+        catch (IOException ex) {
+            throw new IllegalStateException("Couldn't decode strings of scanned locale " + keyLocales[i], ex);
+        }
+        decoded.lazySet(i, ret);
+        return ret;
+    }
+
+    /**
+     * Returns the locales having at least one string, in document order,
+     * without decoding any string.
+     */
+    public ImmutableSet<Locale> locales() {
+        return locales;
+    }
+
+    public boolean isEmpty() {
+        return locales.isEmpty();
+    }
+
+    /**
+     * Returns whether strings of provided locale are already decoded, or
+     * there are none.
+     */
+    public boolean isDecoded(Locale locale) {
+        if (dict != null) {
+            return true;
+        }
+        for (int i = 0; i < keyLocales.length; i++) {
+            if (keyLocales[i].equals(locale) && decoded.get(i) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the strings of provided locale, decoding them on first call.
+     * See {@link Dict#get(Locale)}
+     */
+    public ImmutableList<String> get(Locale locale) {
+        checkNotNull(locale);
+        Dict d = dict;
+        if (d != null) {
+            return d.get(locale);
+        }
+        ImmutableList<String> ret = null;
+        ImmutableList.Builder<String> merged = null;
+        for (int i = 0; i < keyLocales.length; i++) {
+            if (!keyLocales[i].equals(locale)) {
+                continue;
+            }
+            if (ret == null) {
+                ret = decode(i);
+            } else {
+                // duplicate keys are merged like the eager deserializer does
+                if (merged == null) {
+                    merged = ImmutableList.builder();
+                    merged.addAll(ret);
+                }
+                merged.addAll(decode(i));
+            }
+        }
+        if (merged != null) {
+            return merged.build();
+        }
+        return ret == null ? ImmutableList.<String>of() : ret;
+    }
+
+    /**
+     * See {@link Dict#str(Locale)}
+     */
+    public String str(Locale locale) {
+        ImmutableList<String> strings = get(locale);
+        return strings.isEmpty() ? "" : strings.get(0);
+    }
+
+    /**
+     * See {@link Dict#nonEmptyString(Locale)}
+     */
+    public String nonEmptyString(Locale locale) {
+        for (String s : get(locale)) {
+            if (!s.isEmpty()) {
+                return s;
+            }
+        }
+        return "";
+    }
+
+    /**
+     * See {@link Dict#some(Locale...)}. Only the asked locales are decoded,
+     * unless none of them has a non empty string.
+     */
+    public LocalizedString some(Locale... locales) {
+        for (Locale locale : locales) {
+            String s = nonEmptyString(locale);
+            if (!s.isEmpty()) {
+                return LocalizedString.of(locale, s);
+            }
+        }
+        return toDict().some(locales);
+    }
+
+    /**
+     * Returns the full dict, decoding all locales on first call.
+     */
+    public Dict toDict() {
+        Dict ret = dict;
+        if (ret == null) {
+            Dict.Builder builder = Dict.builder();
+            for (int i = 0; i < keyLocales.length; i++) {
+                builder.put(keyLocales[i], decode(i));
+            }
+            ret = builder.build();
+            dict = ret;
+        }
+        return ret;
+    }
+
+    @Override
+    public int hashCode() {
+        return toDict().hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof LazyDict)) {
+            return false;
+        }
+        return toDict().equals(((LazyDict) obj).toDict());
+    }
+
+    /**
+     * Returns the full dict as string, decoding all locales.
+     */
+    @Override
+    public String toString() {
+        return toDict().toString();
+    }
+}
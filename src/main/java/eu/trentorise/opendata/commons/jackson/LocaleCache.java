@@ -0,0 +1,141 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.commons.jackson;
+
+import java.util.Locale;
+
+/**
+ * Canonicalizing cache of parsed locales, keyed by the raw characters of the
+ * json token, so frequent tags are resolved without allocating neither
+ * strings nor locales.
+ *
+ * The cache is a fixed size direct-mapped table: a colliding tag just
+ * replaces the previous entry, so no input can make it grow. Entries are
+ * immutable, thus the table can be shared among threads without locking - at
+ * worst a thread won't see an entry just written by another one and will
+ * parse the tag again.
+ *
+ * @since 2.0.0
+ */
+final class LocaleCache {
+
+    /**
+     * Must be a power of two.
+     */
+    private static final int SIZE = 256;
+
+    /**
+     * Longer tags are parsed each time and never cached.
+     */
+    static final int MAX_TAG_LENGTH = 32;
+
+    private static final Entry[] TABLE = new Entry[SIZE];
+
+    private static final class Entry {
+
+        final int hash;
+        final String tag;
+        final Locale locale;
+
+        Entry(int hash, String tag, Locale locale) {
+            this.hash = hash;
+            this.tag = tag;
+            this.locale = locale;
+        }
+    }
+
+    private LocaleCache() {
+    }
+
+    /**
+     * Returns the locale for the tag held in {@code buf} from {@code offset}
+     * for {@code len} characters.
+     *
+     * @see #parse(String)
+     */
+    static Locale get(char[] buf, int offset, int len) {
+        if (len > MAX_TAG_LENGTH) {
+            return parse(new String(buf, offset, len));
+        }
+
+        int h = 0;
+        for (int i = offset; i < offset + len; i++) {
+            h = 31 * h + buf[i];
+        }
+        h ^= h >>> 16;
+
+        Entry entry = TABLE[h & (SIZE - 1)];
+        if (entry != null && entry.hash == h && entry.tag.length() == len) {
+            String tag = entry.tag;
+            int i = 0;
+            while (i < len && tag.charAt(i) == buf[offset + i]) {
+                i++;
+            }
+            if (i == len) {
+                return entry.locale;
+            }
+        }
+        return store(h, new String(buf, offset, len));
+    }
+
+    /**
+     * Returns the locale for the provided tag.
+     *
+     * @see #parse(String)
+     */
+    static Locale get(String tag) {
+        int len = tag.length();
+        if (len > MAX_TAG_LENGTH) {
+            return parse(tag);
+        }
+
+        int h = 0;
+        for (int i = 0; i < len; i++) {
+            h = 31 * h + tag.charAt(i);
+        }
+        h ^= h >>> 16;
+
+        Entry entry = TABLE[h & (SIZE - 1)];
+        if (entry != null && entry.hash == h && entry.tag.equals(tag)) {
+            return entry.locale;
+        }
+        return store(h, tag);
+    }
+
+    private static Locale store(int hash, String tag) {
+        Locale locale = parse(tag);
+        TABLE[hash & (SIZE - 1)] = new Entry(hash, tag, locale);
+        return locale;
+    }
+
+    /**
+     * Parses a locale tag. Accepts both {@link Locale#toString()} format
+     * (i.e. {@code en_US}, which is what Jackson writes for locales) and
+     * language tags (i.e. {@code en-US}). Empty string is parsed as
+     * {@link Locale#ROOT}.
+     */
+    static Locale parse(String tag) {
+        if (tag.indexOf('_') < 0) {
+            return Locale.forLanguageTag(tag);
+        }
+        String[] parts = tag.split("_", 3);
+        if (parts.length == 2) {
+            return new Locale(parts[0], parts[1]);
+        } else {
+            return new Locale(parts[0], parts[1], parts[2]);
+        }
+    }
+}
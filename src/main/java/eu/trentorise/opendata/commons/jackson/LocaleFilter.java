@@ -0,0 +1,167 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.commons.jackson;
+
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import static com.google.common.base.Preconditions.checkArgument;
+import java.util.Arrays;
+import java.util.Locale;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Locales to keep when deserializing {@code Dict}, {@link LazyDict} and
+ * {@code LocalizedString}, so strings in other languages are neither decoded
+ * nor retained. Set it into a reader with {@link #applyTo(ObjectReader)} or
+ * into a Jacksonizer with {@link Jacksonizer#withLocaleFilter(LocaleFilter)}.
+ *
+ * A locale is kept if it is one of the filter locales, or if its language
+ * alone is, so {@code it} also keeps {@code it_IT} but {@code it_IT} doesn't
+ * keep {@code it}. Values of the other locales are skipped while parsing
+ * and so not checked to be strings. If a dict has none of the filter
+ * locales, the strings of its first locale in the fallback chain are kept.
+ * Localized strings in a locale neither kept nor in the fallback chain
+ * become the empty {@code LocalizedString.of()}, which is also what an empty
+ * localized string in the input reads as: the dropped locale is lost, so
+ * filtered readers can't tell the two cases apart. Read without the filter
+ * if that matters.
+ *
+ * @since 2.0.0
+ */
+@Beta
+@Immutable
+public final class LocaleFilter {
+
+    private final ImmutableSet<Locale> locales;
+    private final ImmutableList<Locale> fallbacks;
+
+    /**
+     * Languages of locales having only the language
+     */
+    private final ImmutableSet<String> languages;
+
+    private LocaleFilter(ImmutableSet<Locale> locales, ImmutableList<Locale> fallbacks) {
+        this.locales = locales;
+        this.fallbacks = fallbacks;
+        ImmutableSet.Builder<String> languagesBuilder = ImmutableSet.builder();
+        for (Locale locale : locales) {
+            if (locale.getCountry().isEmpty() && locale.getVariant().isEmpty() && locale.getScript().isEmpty()) {
+                languagesBuilder.add(locale.getLanguage());
+            }
+        }
+        this.languages = languagesBuilder.build();
+    }
+
+    /**
+     * Returns a filter keeping only provided locales.
+     *
+     * @throws IllegalArgumentException if no locale is given
+     */
+    public static LocaleFilter of(Locale... locales) {
+        return of(Arrays.asList(locales));
+    }
+
+    /**
+     * Returns a filter keeping only provided locales.
+     *
+     * @throws IllegalArgumentException if no locale is given
+     */
+    public static LocaleFilter of(Iterable<Locale> locales) {
+        ImmutableSet<Locale> set = ImmutableSet.copyOf(locales);
+        checkArgument(!set.isEmpty(), "Locale filter needs at least a locale to keep!");
+        return new LocaleFilter(set, ImmutableList.<Locale>of());
+    }
+
+    /**
+     * Returns a filter like this one, which keeps a dict having none of the
+     * filter locales in the first found of the provided ones, tried in
+     * order.
+     */
+    public LocaleFilter withFallbacks(Locale... fallbacks) {
+        return withFallbacks(Arrays.asList(fallbacks));
+    }
+
+    /**
+     * See {@link #withFallbacks(Locale...)}
+     */
+    public LocaleFilter withFallbacks(Iterable<Locale> fallbacks) {
+        return new LocaleFilter(locales, ImmutableList.copyOf(fallbacks));
+    }
+
+    public ImmutableSet<Locale> getLocales() {
+        return locales;
+    }
+
+    public ImmutableList<Locale> getFallbacks() {
+        return fallbacks;
+    }
+
+    /**
+     * Returns whether values of provided locale are kept.
+     */
+    public boolean keeps(Locale locale) {
+        return locales.contains(locale) || (!languages.isEmpty() && languages.contains(locale.getLanguage()));
+    }
+
+    /**
+     * Returns the position of provided locale in the fallback chain, or -1
+     * if it is not there.
+     */
+    public int fallbackRank(Locale locale) {
+        return fallbacks.indexOf(locale);
+    }
+
+    /**
+     * Returns a reader like the provided one which applies this filter.
+     */
+    public ObjectReader applyTo(ObjectReader reader) {
+        return reader.withAttribute(LocaleFilter.class, this);
+    }
+
+    /**
+     * Returns the filter set into the reader of provided context, if any.
+     */
+    @Nullable
+    static LocaleFilter get(DeserializationContext ctxt) {
+        return (LocaleFilter) ctxt.getAttribute(LocaleFilter.class);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * locales.hashCode() + fallbacks.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof LocaleFilter)) {
+            return false;
+        }
+        LocaleFilter other = (LocaleFilter) obj;
+        return locales.equals(other.locales) && fallbacks.equals(other.fallbacks);
+    }
+
+    @Override
+    public String toString() {
+        return "LocaleFilter{" + "locales=" + locales + ", fallbacks=" + fallbacks + '}';
+    }
+}
@@ -0,0 +1,460 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.commons.jackson;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableList;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Loads big files of
+ * <a href="http://ndjson.org/" target="_blank">newline delimited json</a> in
+ * parallel. The file is memory mapped and split in chunks on line boundaries,
+ * then chunks are decoded on a {@link ForkJoinPool} with the readers of a
+ * {@link Jacksonizer}.
+ *
+ * <p>
+ * Example:
+ * </p>
+ * <pre>
+ * ParallelNdjsonLoader.of(Jacksonizer.of(), Dict.class)
+ *      .withDelivery(Delivery.UNORDERED)
+ *      .load(file, new ChunkHandler&lt;Dict&gt;() {
+ *          public void onChunk(List&lt;Dict&gt; values, ChunkStats stats) {
+ *              ...
+ *          }
+ *      });
+ * </pre>
+ *
+ * @since 2.0.0
+ */
+@ParametersAreNonnullByDefault
+@Immutable
+@Beta
+public final class ParallelNdjsonLoader<T> {
+
+    private static final Logger LOG = Logger.getLogger(ParallelNdjsonLoader.class.getName());
+
+    /**
+     * Default size in bytes of a chunk
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * Size of the window read when searching for the end of a line.
+     */
+    private static final int SCAN_WINDOW = 4096;
+
+    /**
+     * How decoded chunks are handed to the {@link ChunkHandler}
+     */
+    public enum Delivery {
+        /**
+         * Chunks are delivered in file order from the thread calling
+         * {@link #load(File, ChunkHandler)}. At most a few chunks per worker
+         * are held in memory waiting for their turn.
+         */
+        ORDERED,
+        /**
+         * Chunks are delivered as soon as they are decoded, from pool
+         * threads. The handler must be thread safe.
+         */
+        UNORDERED
+    }
+
+    /**
+     * Receives decoded values one chunk at a time.
+     */
+    public interface ChunkHandler<T> {
+
+        /**
+         * Called once per chunk with the values of the chunk in file order.
+         */
+        void onChunk(List<T> values, ChunkStats stats);
+    }
+
+    /**
+     * Statistics about the decoding of a chunk.
+     */
+    @Immutable
+    public static final class ChunkStats {
+
+        private final int index;
+        private final long offset;
+        private final long bytes;
+        private final int records;
+        private final long nanos;
+
+        private ChunkStats(int index, long offset, long bytes, int records, long nanos) {
+            this.index = index;
+            this.offset = offset;
+            this.bytes = bytes;
+            this.records = records;
+            this.nanos = nanos;
+        }
+
+        /**
+         * Position of the chunk in the file, starting from 0
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Offset in bytes of the chunk start in the file
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * Size of the chunk in bytes
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Number of decoded values
+         */
+        public int getRecords() {
+            return records;
+        }
+
+        /**
+         * Time spent decoding the chunk, in nanoseconds
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * Decoding throughput in megabytes per second
+         */
+        public double getMegabytesPerSecond() {
+            return nanos == 0 ? 0 : (bytes / (1024.0 * 1024.0)) / (nanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return "ChunkStats{" + "index=" + index + ", offset=" + offset + ", bytes=" + bytes + ", records="
+                    + records + ", nanos=" + nanos + ", MB/s=" + String.format("%.1f", getMegabytesPerSecond())
+                    + '}';
+        }
+    }
+
+    private final Jacksonizer jacksonizer;
+    private final Class<T> clazz;
+    private final int chunkSize;
+    private final Delivery delivery;
+    @Nullable
+    private final ForkJoinPool pool;
+
+    private ParallelNdjsonLoader(Jacksonizer jacksonizer, Class<T> clazz, int chunkSize, Delivery delivery,
+            @Nullable ForkJoinPool pool) {
+        this.jacksonizer = jacksonizer;
+        this.clazz = clazz;
+        this.chunkSize = chunkSize;
+        this.delivery = delivery;
+        this.pool = pool;
+    }
+
+    /**
+     * Returns a loader of values of type {@code clazz} using readers of the
+     * provided Jacksonizer, with {@link #DEFAULT_CHUNK_SIZE} and
+     * {@link Delivery#ORDERED ordered} delivery.
+     */
+    public static <T> ParallelNdjsonLoader<T> of(Jacksonizer jacksonizer, Class<T> clazz) {
+        checkNotNull(jacksonizer);
+        checkNotNull(clazz);
+        return new ParallelNdjsonLoader<T>(jacksonizer, clazz, DEFAULT_CHUNK_SIZE, Delivery.ORDERED, null);
+    }
+
+    /**
+     * Returns a copy of this loader splitting files in chunks of about
+     * {@code chunkSize} bytes. Actual chunks end at the first line end after
+     * that size.
+     */
+    public ParallelNdjsonLoader<T> withChunkSize(int chunkSize) {
+        checkArgument(chunkSize > 0, "Chunk size must be positive, found instead %s", chunkSize);
+        return new ParallelNdjsonLoader<T>(jacksonizer, clazz, chunkSize, delivery, pool);
+    }
+
+    /**
+     * Returns a copy of this loader delivering chunks in the provided way.
+     */
+    public ParallelNdjsonLoader<T> withDelivery(Delivery delivery) {
+        checkNotNull(delivery);
+        return new ParallelNdjsonLoader<T>(jacksonizer, clazz, chunkSize, delivery, pool);
+    }
+
+    /**
+     * Returns a copy of this loader decoding on the provided pool. By default
+     * a new pool with as many threads as processors is created on each load
+     * and shut down at the end.
+     */
+    public ParallelNdjsonLoader<T> withPool(ForkJoinPool pool) {
+        checkNotNull(pool);
+        return new ParallelNdjsonLoader<T>(jacksonizer, clazz, chunkSize, delivery, pool);
+    }
+
+    /**
+     * Decodes the provided file and hands the values to {@code handler}, one
+     * chunk at a time. Returns when all chunks have been delivered.
+     *
+     * @throws IllegalArgumentException if the file can't be read or on json
+     * error. In such case chunks not yet delivered are discarded.
+     */
+    public void load(File file, ChunkHandler<T> handler) {
+        checkNotNull(file);
+        checkNotNull(handler);
+
+        ForkJoinPool p = pool == null ? new ForkJoinPool() : pool;
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                List<Long> bounds = chunkBounds(channel);
+                LOG.log(Level.FINE, "Loading {0} in {1} chunks", new Object[]{file, bounds.size() - 1});
+                if (delivery == Delivery.ORDERED) {
+                    loadOrdered(p, channel, bounds, handler);
+                } else {
+                    loadUnordered(p, channel, bounds, handler);
+                }
+            }
+            finally {
+                raf.close();
+            }
+        }
+        catch (IOException ex) {
+            throw new IllegalArgumentException("Couldn't read ndjson file " + file, ex);
+        }
+        finally {
+            if (pool == null) {
+                p.shutdown();
+            }
+        }
+    }
+
+    private void loadOrdered(ForkJoinPool p, FileChannel channel, List<Long> bounds,
+            ChunkHandler<T> handler) {
+        int chunks = bounds.size() - 1;
+        int window = 2 * p.getParallelism();
+        LinkedList<ForkJoinTask<Chunk<T>>> pending = new LinkedList<ForkJoinTask<Chunk<T>>>();
+        int next = 0;
+        try {
+            while (next < chunks || !pending.isEmpty()) {
+                while (next < chunks && pending.size() < window) {
+                    pending.add(p.submit(new DecodeTask(channel, next, bounds.get(next), bounds.get(next + 1))));
+                    next++;
+                }
+                Chunk<T> chunk = await(pending.removeFirst());
+                handler.onChunk(chunk.values, chunk.stats);
+            }
+        }
+        finally {
+            for (ForkJoinTask<Chunk<T>> task : pending) {
+                task.cancel(true);
+            }
+        }
+    }
+
+    private void loadUnordered(ForkJoinPool p, FileChannel channel, List<Long> bounds,
+            final ChunkHandler<T> handler) {
+        int chunks = bounds.size() - 1;
+        List<ForkJoinTask<Chunk<T>>> tasks = new ArrayList<ForkJoinTask<Chunk<T>>>(chunks);
+        try {
+            for (int i = 0; i < chunks; i++) {
+                final DecodeTask decode = new DecodeTask(channel, i, bounds.get(i), bounds.get(i + 1));
+                tasks.add(p.submit(new Callable<Chunk<T>>() {
+                    @Override
+                    public Chunk<T> call() {
+                        Chunk<T> chunk = decode.call();
+                        if (chunk.error == null) {
+                            handler.onChunk(chunk.values, chunk.stats);
+                        }
+                        return chunk;
+                    }
+                }));
+            }
+            for (ForkJoinTask<Chunk<T>> task : tasks) {
+                await(task);
+            }
+        }
+        finally {
+            for (ForkJoinTask<Chunk<T>> task : tasks) {
+                task.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Waits for the task to complete and returns its chunk.
+     *
+     * @throws IllegalArgumentException if the chunk couldn't be decoded.
+     */
+    private Chunk<T> await(ForkJoinTask<Chunk<T>> task) {
+        Chunk<T> chunk;
+        try {
+            chunk = task.get();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading ndjson!", ex);
+        }
+        catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalArgumentException("Couldn't decode ndjson chunk!", ex.getCause());
+        }
+        if (chunk.error != null) {
+            throw new IllegalArgumentException(Jacksonizer.fromJsonError(clazz, chunk.error).getMessage()
+                    + " (in chunk " + chunk.index + " starting at byte " + chunk.start + ")", chunk.error);
+        }
+        return chunk;
+    }
+
+    /**
+     * Returns the offsets where chunks start, plus the file size as last
+     * element. Every chunk but the last ends right after a newline.
+     */
+    private List<Long> chunkBounds(FileChannel channel) throws IOException {
+        long size = channel.size();
+        List<Long> ret = new ArrayList<Long>();
+        ret.add(0L);
+        ByteBuffer window = ByteBuffer.allocate(SCAN_WINDOW);
+        long pos = 0;
+        while (size - pos > chunkSize) {
+            long lineEnd = findLineEnd(channel, pos + chunkSize, size, window);
+            if (lineEnd >= size) {
+                break;
+            }
+            ret.add(lineEnd);
+            pos = lineEnd;
+        }
+        ret.add(size);
+        return ret;
+    }
+
+    /**
+     * Returns the offset right after the first newline found from
+     * {@code from}, or {@code size} if there is none.
+     */
+    private static long findLineEnd(FileChannel channel, long from, long size, ByteBuffer window) throws IOException {
+        long pos = from;
+        while (pos < size) {
+            window.clear();
+            int read = channel.read(window, pos);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (window.get(i) == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += read;
+        }
+        return size;
+    }
+
+    /**
+     * Result of a decode task. Errors are carried here instead of being thrown
+     * because pool wrapping of checked exceptions would lose them.
+     */
+    private static final class Chunk<T> {
+
+        final List<T> values;
+        @Nullable
+        final ChunkStats stats;
+        final int index;
+        final long start;
+        @Nullable
+        final IOException error;
+
+        Chunk(List<T> values, @Nullable ChunkStats stats, int index, long start, @Nullable IOException error) {
+            this.values = values;
+            this.stats = stats;
+            this.index = index;
+            this.start = start;
+            this.error = error;
+        }
+    }
+
+    private final class DecodeTask implements Callable<Chunk<T>> {
+
+        private final FileChannel channel;
+        private final int index;
+        private final long start;
+        private final long end;
+
+        DecodeTask(FileChannel channel, int index, long start, long end) {
+            this.channel = channel;
+            this.index = index;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public Chunk<T> call() {
+            try {
+                return decode();
+            }
+            catch (IOException ex) {
+                return new Chunk<T>(ImmutableList.<T>of(), null, index, start, ex);
+            }
+        }
+
+        private Chunk<T> decode() throws IOException {
+            long startTime = System.nanoTime();
+            List<T> values = new ArrayList<T>();
+            if (end > start) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                ObjectReader reader = jacksonizer.reader(clazz);
+                MappingIterator<T> iter = reader.readValues(new ByteBufferBackedInputStream(buffer));
+                while (iter.hasNextValue()) {
+                    values.add(iter.nextValue());
+                }
+            }
+            ChunkStats stats = new ChunkStats(index, start, end - start, values.size(), System.nanoTime() - startTime);
+            LOG.log(Level.FINER, "Decoded {0}", stats);
+            return new Chunk<T>(values, stats, index, start, null);
+        }
+    }
+}
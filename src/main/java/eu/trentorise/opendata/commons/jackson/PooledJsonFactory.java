@@ -0,0 +1,119 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.commons.jackson;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.core.io.IOContext;
+import com.fasterxml.jackson.core.util.BufferRecycler;
+import com.google.common.annotations.Beta;
+
+/**
+ * Json factory whose parsers and generators take their buffers from a pool
+ * shared by all threads, instead of from Jackson per thread recyclers.
+ *
+ * Jackson keeps recycled buffers in thread locals, which works well with a
+ * few long lived threads but is useless when each task runs on a new thread
+ * (i.e. thread per request servers): then every parser and generator
+ * allocates its buffers from scratch. With this factory buffers released by
+ * a thread can be reused by any other one.
+ *
+ * To use it, create the object mapper with
+ * {@code new ObjectMapper(new PooledJsonFactory())} or see
+ * {@link Jacksonizer#ofPooledBuffers()}
+ *
+ * @since 2.0.0
+ */
+@Beta
+public class PooledJsonFactory extends JsonFactory {
+
+    private static final long serialVersionUID = 1L;
+
+    public PooledJsonFactory() {
+        super();
+    }
+
+    public PooledJsonFactory(ObjectCodec codec) {
+        super(codec);
+    }
+
+    protected PooledJsonFactory(PooledJsonFactory src, ObjectCodec codec) {
+        super(src, codec);
+    }
+
+    @Override
+    public PooledJsonFactory copy() {
+        _checkInvalidCopy(PooledJsonFactory.class);
+        return new PooledJsonFactory(this, null);
+    }
+
+    @Override
+    protected Object readResolve() {
+        return new PooledJsonFactory(this, _objectCodec);
+    }
+
+    @Override
+    public BufferRecycler _getBufferRecycler() {
+        return StripedBufferRecycler.INSTANCE;
+    }
+
+    @Override
+    protected IOContext _createContext(Object srcRef, boolean resourceManaged) {
+        return new PooledIOContext(StripedBufferRecycler.INSTANCE, srcRef, resourceManaged);
+    }
+
+    /**
+     * Gives byte buffers back to the pool, as the final
+     * {@link BufferRecycler#releaseByteBuffer(int, byte[])} used by plain
+     * contexts can't.
+     */
+    private static final class PooledIOContext extends IOContext {
+
+        private final StripedBufferRecycler recycler;
+
+        PooledIOContext(StripedBufferRecycler recycler, Object sourceRef, boolean managedResource) {
+            super(recycler, sourceRef, managedResource);
+            this.recycler = recycler;
+        }
+
+        @Override
+        public void releaseReadIOBuffer(byte[] buf) {
+            if (buf != null) {
+                _verifyRelease(buf, _readIOBuffer);
+                _readIOBuffer = null;
+                recycler.releaseBytes(BufferRecycler.BYTE_READ_IO_BUFFER, buf);
+            }
+        }
+
+        @Override
+        public void releaseWriteEncodingBuffer(byte[] buf) {
+            if (buf != null) {
+                _verifyRelease(buf, _writeEncodingBuffer);
+                _writeEncodingBuffer = null;
+                recycler.releaseBytes(BufferRecycler.BYTE_WRITE_ENCODING_BUFFER, buf);
+            }
+        }
+
+        @Override
+        public void releaseBase64Buffer(byte[] buf) {
+            if (buf != null) {
+                _verifyRelease(buf, _base64Buffer);
+                _base64Buffer = null;
+                recycler.releaseBytes(BufferRecycler.BYTE_BASE64_CODEC_BUFFER, buf);
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.commons.jackson;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Growable in memory byte stream which exposes its buffer and is kept per
+ * thread, so serializing to bytes doesn't allocate a new buffer each time.
+ *
+ * Streams must be taken with {@link #acquire()} and given back with
+ * {@link #release()} when their content is not needed anymore. If the stream
+ * of current thread is already in use (i.e. a callback serializing again)
+ * a fresh one is returned.
+ *
+ * @since 2.0.0
+ */
+final class ReusableOutputStream extends OutputStream {
+
+    private static final int INITIAL_SIZE = 2000;
+
+    /**
+     * Buffers grown past this size are dropped on release, so a single huge
+     * object doesn't keep memory busy for the whole life of the thread.
+     */
+    static final int MAX_RETAINED_SIZE = 512 * 1024;
+
+    private static final ThreadLocal<ReusableOutputStream> CURRENT = new ThreadLocal<ReusableOutputStream>() {
+        @Override
+        protected ReusableOutputStream initialValue() {
+            return new ReusableOutputStream();
+        }
+    };
+
+    private byte[] buf = new byte[INITIAL_SIZE];
+    private int count;
+    private boolean inUse;
+
+    private ReusableOutputStream() {
+    }
+
+    /**
+     * Returns an empty stream, reusing the one of current thread if free.
+     */
+    static ReusableOutputStream acquire() {
+        ReusableOutputStream ret = CURRENT.get();
+        if (ret.inUse) {
+            return new ReusableOutputStream();
+        }
+        ret.inUse = true;
+        return ret;
+    }
+
+    /**
+     * Empties the stream and makes it available for next
+     * {@link #acquire()}. Previously returned buffers must not be used
+     * anymore.
+     */
+    void release() {
+        count = 0;
+        inUse = false;
+        if (buf.length > MAX_RETAINED_SIZE) {
+            buf = new byte[INITIAL_SIZE];
+        }
+    }
+
+    /**
+     * Returns the internal buffer, holding {@link #size()} written bytes from
+     * position 0.
+     */
+    byte[] buffer() {
+        return buf;
+    }
+
+    int size() {
+        return count;
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(count + 1);
+        buf[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(count + len);
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(capacity, buf.length * 2));
+        }
+    }
+}
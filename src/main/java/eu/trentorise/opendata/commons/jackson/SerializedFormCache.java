@@ -0,0 +1,176 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.commons.jackson;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.json.UTF8JsonGenerator;
+import com.fasterxml.jackson.core.json.WriterBasedJsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.google.common.annotations.Beta;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import static com.google.common.base.Preconditions.checkArgument;
+import java.io.IOException;
+import java.io.StringWriter;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Bounded cache of the json text of immutable Tod commons values
+ * ({@code Dict}, {@code LocalizedString}, {@code PeriodOfTime} and
+ * {@code Ref}), so hot instances written over and over, like organization
+ * names or licences, are encoded only once. To use it set it into the module
+ * with {@link TodCommonsModule#setSerializedFormCache(SerializedFormCache)}:
+ * on hits serializers then copy the cached json with
+ * {@link JsonGenerator#writeRawValue(com.fasterxml.jackson.core.SerializableString)},
+ * which for byte output reuses the UTF-8 bytes encoded the first time.
+ *
+ * The cache is only used by plain json generators writing compact output
+ * with default escaping. Binary formats, pretty printing, custom character
+ * escapes, {@link JsonGenerator.Feature#ESCAPE_NON_ASCII} and other
+ * generator features changing the output bypass it, as do token buffers
+ * used by {@code convertValue} and {@code valueToTree}.
+ *
+ * Cached forms depend on the features of the module, so a cache should not
+ * be shared by modules with different features.
+ *
+ * Eviction is approximately least recently used, bounded by the total chars
+ * of cached json.
+ *
+ * @since 2.0.0
+ */
+@Beta
+@ThreadSafe
+public final class SerializedFormCache {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final Cache<Object, SerializedString> cache;
+    private final boolean byIdentity;
+
+    private SerializedFormCache(long maxChars, boolean byIdentity) {
+        checkArgument(maxChars > 0, "Max chars must be positive, found instead %s", maxChars);
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder();
+        if (byIdentity) {
+            // weak keys are compared by identity, and don't keep values alive
+            builder.weakKeys();
+        }
+        this.cache = builder.maximumWeight(maxChars)
+                .weigher(new Weigher<Object, SerializedString>() {
+                    @Override
+                    public int weigh(Object key, SerializedString value) {
+                        return value.charLength();
+                    }
+                })
+                .recordStats()
+                .build();
+        this.byIdentity = byIdentity;
+    }
+
+    /**
+     * Returns a cache keyed by identity of the serialized values, holding json
+     * of at most about {@code maxChars} total chars. Values are not kept
+     * alive by the cache. Lookups are cheap also for big values, but equal
+     * values read at different times are cached separately.
+     */
+    public static SerializedFormCache byIdentity(long maxChars) {
+        return new SerializedFormCache(maxChars, true);
+    }
+
+    /**
+     * Returns a cache keyed by equality of the serialized values, holding
+     * json of at most about {@code maxChars} total chars. Equal values share
+     * the same entry, but each lookup computes hash code and equality.
+     */
+    public static SerializedFormCache byEquality(long maxChars) {
+        return new SerializedFormCache(maxChars, false);
+    }
+
+    public boolean isByIdentity() {
+        return byIdentity;
+    }
+
+    /**
+     * Returns hit, miss and eviction counts so far.
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    /**
+     * Returns the approximate number of cached forms.
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Discards all cached forms.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Returns whether cached forms can be written as they are by the provided
+     * generator, giving the same output it would produce.
+     */
+    static boolean canWriteRaw(JsonGenerator jgen) {
+        return (jgen instanceof UTF8JsonGenerator || jgen instanceof WriterBasedJsonGenerator)
+                && jgen.getPrettyPrinter() == null
+                && jgen.getCharacterEscapes() == null
+                && !jgen.isEnabled(JsonGenerator.Feature.ESCAPE_NON_ASCII)
+                && !jgen.isEnabled(JsonGenerator.Feature.WRITE_NUMBERS_AS_STRINGS)
+                && jgen.isEnabled(JsonGenerator.Feature.QUOTE_FIELD_NAMES);
+    }
+
+    /**
+     * Returns the cached json of {@code value}, encoding it with
+     * {@code serializer} if missing.
+     */
+    <T> SerializedString get(T value, JsonSerializer<T> serializer, SerializerProvider provider) throws IOException {
+        SerializedString ret = cache.getIfPresent(value);
+        if (ret == null) {
+            ret = encode(value, serializer, provider);
+            cache.put(value, ret);
+        }
+        return ret;
+    }
+
+    private static <T> SerializedString encode(T value, JsonSerializer<T> serializer,
+            @Nullable SerializerProvider provider) throws IOException {
+        StringWriter sw = new StringWriter();
+        JsonGenerator jgen = JSON_FACTORY.createGenerator(sw);
+        try {
+            serializer.serialize(value, jgen, provider);
+        }
+        finally {
+            jgen.close();
+        }
+        return new SerializedString(sw.toString());
+    }
+
+    @Override
+    public String toString() {
+        return "SerializedFormCache{" + "byIdentity=" + byIdentity + ", size=" + size() + ", stats=" + getStats()
+                + '}';
+    }
+}
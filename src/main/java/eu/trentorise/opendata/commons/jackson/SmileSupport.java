@@ -0,0 +1,45 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.commons.jackson;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+
+/**
+ * Holds the Jacksonizer of {@link Jacksonizer#ofSmile()}. Only this class
+ * refers to {@code jackson-dataformat-smile}, which is an optional
+ * dependency: it is loaded on first call of {@code ofSmile()}, so json
+ * Jacksonizers work also without the jar.
+ */
+final class SmileSupport {
+
+    static final Jacksonizer INSTANCE = Jacksonizer.of(mapper());
+
+    private SmileSupport() {
+    }
+
+    private static ObjectMapper mapper() {
+        SmileFactory factory = new SmileFactory();
+        // back references to field names and short string values already
+        // written, so i.e. repeated locale tags of dicts take one or two bytes
+        factory.enable(SmileGenerator.Feature.CHECK_SHARED_NAMES);
+        factory.enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES);
+        ObjectMapper ret = new ObjectMapper(factory);
+        TodCommonsModule.registerModulesInto(ret);
+        return ret;
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.commons.jackson;
+
+import com.google.common.annotations.Beta;
+import eu.trentorise.opendata.commons.LocalizedString;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Bounded canonicalizing pool of strings and optionally of
+ * {@link LocalizedString}, so that equal values read by many deserializations
+ * share a single instance. Meant to reduce the heap taken by big collections
+ * of {@code Dict} and {@code LocalizedString} held in memory, where labels
+ * like licence names repeat thousands of times. To use it set it into the
+ * module with {@link TodCommonsModule#setStringPool(StringPool)}.
+ *
+ * Like the locale cache of the module, each pool is a fixed size
+ * direct-mapped table: a colliding value just replaces the previous entry,
+ * so no input can make it grow, and it is shared among threads without
+ * locking. Strings found in the pool are not even allocated, as they are
+ * looked up by the characters of the parser.
+ *
+ * @since 2.0.0
+ */
+@Beta
+@ThreadSafe
+public final class StringPool {
+
+    /**
+     * Longer strings are never pooled, as they are unlikely to repeat.
+     */
+    public static final int MAX_STRING_LENGTH = 256;
+
+    /**
+     * Counters are spread among stripes padded to different cache lines, so
+     * threads deserializing in parallel don't contend on them.
+     */
+    private static final int STRIPES = 16;
+    private static final int STRIPE_WIDTH = 8;
+
+    private static final int STRING_HITS = 0;
+    private static final int STRING_MISSES = 1;
+    private static final int LOCALIZED_STRING_HITS = 2;
+    private static final int LOCALIZED_STRING_MISSES = 3;
+
+    private final String[] strings;
+    @Nullable
+    private final LocalizedString[] localizedStrings;
+    private final int mask;
+    private final AtomicLongArray counters = new AtomicLongArray(STRIPES * STRIPE_WIDTH);
+
+    /**
+     * Hit and miss counts of a pool.
+     */
+    @Immutable
+    public static final class Stats {
+
+        private final long hits;
+        private final long misses;
+
+        private Stats(long hits, long misses) {
+            this.hits = hits;
+            this.misses = misses;
+        }
+
+        /**
+         * Number of lookups which found the value in the pool
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * Number of lookups which didn't find the value in the pool.
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * Ratio of hits over lookups, 0 if there were none.
+         */
+        public double getHitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" + "hits=" + hits + ", misses=" + misses + ", hitRate="
+                    + String.format("%.3f", getHitRate()) + '}';
+        }
+    }
+
+    private StringPool(int capacity, boolean pooledLocalizedStrings) {
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = size - 1;
+        this.strings = new String[size];
+        this.localizedStrings = pooledLocalizedStrings ? new LocalizedString[size] : null;
+    }
+
+    /**
+     * Returns a new pool holding at most about {@code capacity} strings.
+     *
+     * @param capacity rounded up to a power of two
+     */
+    public static StringPool of(int capacity) {
+        return of(capacity, false);
+    }
+
+    /**
+     * Returns a new pool holding at most about {@code capacity} strings, and
+     * if {@code pooledLocalizedStrings} is true also as many whole
+     * {@link LocalizedString}.
+     *
+     * @param capacity rounded up to a power of two
+     */
+    public static StringPool of(int capacity, boolean pooledLocalizedStrings) {
+        checkArgument(capacity > 1 && capacity <= 1 << 24, "Capacity must be between 2 and 2^24, found instead %s",
+                capacity);
+        return new StringPool(capacity, pooledLocalizedStrings);
+    }
+
+    /**
+     * Whether whole {@link LocalizedString} are pooled too.
+     */
+    public boolean isPoolingLocalizedStrings() {
+        return localizedStrings != null;
+    }
+
+    /**
+     * Returns the pooled string equal to the provided one, storing it if not
+     * found.
+     */
+    public String intern(String string) {
+        int len = string.length();
+        if (len > MAX_STRING_LENGTH) {
+            return string;
+        }
+        int h = string.hashCode();
+        int slot = spread(h) & mask;
+        String entry = strings[slot];
+        if (entry != null && entry.hashCode() == h && entry.equals(string)) {
+            count(STRING_HITS);
+            return entry;
+        }
+        count(STRING_MISSES);
+        strings[slot] = string;
+        return string;
+    }
+
+    /**
+     * Returns the pooled string made of {@code len} characters of
+     * {@code buf} from {@code offset}, creating and storing it if not found.
+     */
+    String intern(char[] buf, int offset, int len) {
+        if (len > MAX_STRING_LENGTH) {
+            return new String(buf, offset, len);
+        }
+        // same as String.hashCode(), which strings cache
+        int h = 0;
+        for (int i = offset; i < offset + len; i++) {
+            h = 31 * h + buf[i];
+        }
+        int slot = spread(h) & mask;
+        String entry = strings[slot];
+        if (entry != null && entry.length() == len && entry.hashCode() == h) {
+            int i = 0;
+            while (i < len && entry.charAt(i) == buf[offset + i]) {
+                i++;
+            }
+            if (i == len) {
+                count(STRING_HITS);
+                return entry;
+            }
+        }
+        count(STRING_MISSES);
+        String ret = new String(buf, offset, len);
+        strings[slot] = ret;
+        return ret;
+    }
+
+    /**
+     * Returns the pooled localized string equal to provided one, storing it
+     * if not found. If localized strings are not pooled returns the provided
+     * one.
+     */
+    public LocalizedString intern(LocalizedString localizedString) {
+        checkNotNull(localizedString);
+        if (localizedStrings == null || localizedString.str().length() > MAX_STRING_LENGTH) {
+            return localizedString;
+        }
+        int slot = spread(localizedString.hashCode()) & mask;
+        LocalizedString entry = localizedStrings[slot];
+        if (entry != null && entry.equals(localizedString)) {
+            count(LOCALIZED_STRING_HITS);
+            return entry;
+        }
+        count(LOCALIZED_STRING_MISSES);
+        localizedStrings[slot] = localizedString;
+        return localizedString;
+    }
+
+    /**
+     * Returns the hits and misses of string lookups so far.
+     */
+    public Stats getStringStats() {
+        return new Stats(sum(STRING_HITS), sum(STRING_MISSES));
+    }
+
+    /**
+     * Returns the hits and misses of {@link LocalizedString} lookups so far.
+     */
+    public Stats getLocalizedStringStats() {
+        return new Stats(sum(LOCALIZED_STRING_HITS), sum(LOCALIZED_STRING_MISSES));
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private void count(int counter) {
+        long id = Thread.currentThread().getId();
+        int stripe = (int) (id ^ (id >>> 32)) & (STRIPES - 1);
+        counters.incrementAndGet(stripe * STRIPE_WIDTH + counter);
+    }
+
+    private long sum(int counter) {
+        long ret = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            ret += counters.get(i * STRIPE_WIDTH + counter);
+        }
+        return ret;
+    }
+
+    @Override
+    public String toString() {
+        return "StringPool{" + "capacity=" + strings.length + ", strings=" + getStringStats()
+                + (localizedStrings == null ? "" : ", localizedStrings=" + getLocalizedStringStats()) + '}';
+    }
+}
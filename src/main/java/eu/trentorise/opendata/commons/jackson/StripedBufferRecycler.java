@@ -0,0 +1,160 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.commons.jackson;
+
+import com.fasterxml.jackson.core.util.BufferRecycler;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * {@link BufferRecycler} meant to be shared by all threads, keeping released
+ * buffers in lock free striped pools instead of in a per thread recycler. So
+ * buffers are reused even when each task runs on a new thread, where Jackson
+ * thread local recyclers would allocate new buffers every time.
+ *
+ * Each buffer kind has a pool of slots; a thread starts looking for a free
+ * buffer (or a free slot on release) from the slot picked by its id, and
+ * probes a few neighbours. If none is found a new buffer is allocated, or the
+ * released one is left to the garbage collector, so the pool never blocks
+ * nor grows.
+ *
+ * Byte buffers released by Jackson directly through final
+ * {@link #releaseByteBuffer(int, byte[])} (i.e. by
+ * {@link com.fasterxml.jackson.core.util.ByteArrayBuilder}) land in the
+ * single slot of the superclass for their kind, as that method can't be
+ * overridden. The next allocation of the same kind moves them to the pool.
+ *
+ * @since 2.0.0
+ */
+@ThreadSafe
+final class StripedBufferRecycler extends BufferRecycler {
+
+    private static final int PROBES = 4;
+
+    private static final int BYTE_BUFFER_KINDS = 4;
+    private static final int CHAR_BUFFER_KINDS = 4;
+
+    /**
+     * Shared instance
+     */
+    static final StripedBufferRecycler INSTANCE = new StripedBufferRecycler();
+
+    private final int mask;
+    private final List<AtomicReferenceArray<byte[]>> bytePools;
+    private final List<AtomicReferenceArray<char[]>> charPools;
+
+    StripedBufferRecycler() {
+        // about four slots for each core, rounded to a power of two
+        int slots = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 4 - 1) << 1;
+        mask = slots - 1;
+        bytePools = new ArrayList<AtomicReferenceArray<byte[]>>(BYTE_BUFFER_KINDS);
+        for (int i = 0; i < BYTE_BUFFER_KINDS; i++) {
+            bytePools.add(new AtomicReferenceArray<byte[]>(slots));
+        }
+        charPools = new ArrayList<AtomicReferenceArray<char[]>>(CHAR_BUFFER_KINDS);
+        for (int i = 0; i < CHAR_BUFFER_KINDS; i++) {
+            charPools.add(new AtomicReferenceArray<char[]>(slots));
+        }
+    }
+
+    /**
+     * Returns the first slot to probe for current thread.
+     */
+    private int stripe() {
+        long id = Thread.currentThread().getId();
+        int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Moves to the pool the buffer of provided kind which final
+     * {@link #releaseByteBuffer(int, byte[])} left in the superclass slot.
+     * Taking it is synchronized so two threads can't both get it, while a
+     * buffer overwritten there by a concurrent release is just dropped.
+     */
+    private void poolReleased(int ix) {
+        if (_byteBuffers[ix] == null) {
+            return;
+        }
+        byte[] buf;
+        synchronized (_byteBuffers) {
+            buf = _byteBuffers[ix];
+            _byteBuffers[ix] = null;
+        }
+        if (buf != null) {
+            releaseBytes(ix, buf);
+        }
+    }
+
+    @Override
+    public byte[] allocByteBuffer(int ix, int minSize) {
+        poolReleased(ix);
+        int size = Math.max(minSize, byteBufferLength(ix));
+        AtomicReferenceArray<byte[]> pool = bytePools.get(ix);
+        int stripe = stripe();
+        for (int i = 0; i < PROBES; i++) {
+            int slot = (stripe + i) & mask;
+            byte[] buf = pool.get(slot);
+            if (buf != null && buf.length >= size && pool.compareAndSet(slot, buf, null)) {
+                return buf;
+            }
+        }
+        return balloc(size);
+    }
+
+    /**
+     * Gives back a byte buffer taken with {@link #allocByteBuffer(int, int)}
+     */
+    void releaseBytes(int ix, byte[] buf) {
+        AtomicReferenceArray<byte[]> pool = bytePools.get(ix);
+        int stripe = stripe();
+        for (int i = 0; i < PROBES; i++) {
+            int slot = (stripe + i) & mask;
+            if (pool.get(slot) == null && pool.compareAndSet(slot, null, buf)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public char[] allocCharBuffer(int ix, int minSize) {
+        int size = Math.max(minSize, charBufferLength(ix));
+        AtomicReferenceArray<char[]> pool = charPools.get(ix);
+        int stripe = stripe();
+        for (int i = 0; i < PROBES; i++) {
+            int slot = (stripe + i) & mask;
+            char[] buf = pool.get(slot);
+            if (buf != null && buf.length >= size && pool.compareAndSet(slot, buf, null)) {
+                return buf;
+            }
+        }
+        return calloc(size);
+    }
+
+    @Override
+    public void releaseCharBuffer(int ix, char[] buf) {
+        AtomicReferenceArray<char[]> pool = charPools.get(ix);
+        int stripe = stripe();
+        for (int i = 0; i < PROBES; i++) {
+            int slot = (stripe + i) & mask;
+            if (pool.get(slot) == null && pool.compareAndSet(slot, null, buf)) {
+                return;
+            }
+        }
+    }
+}
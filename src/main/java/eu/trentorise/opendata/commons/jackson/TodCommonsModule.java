@@ -15,21 +15,24 @@
  */
 package eu.trentorise.opendata.commons.jackson;
 
-import com.fasterxml.jackson.annotation.JsonCreator;
-import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.SerializableString;
 import com.fasterxml.jackson.core.Version;
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.io.SerializedString;
 import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.KeyDeserializer;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.fasterxml.jackson.databind.type.TypeFactory;
 import com.fasterxml.jackson.datatype.guava.GuavaModule;
-import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableList;
 import eu.trentorise.opendata.commons.Dict;
 import eu.trentorise.opendata.commons.LocalizedString;
 import eu.trentorise.opendata.commons.TodConfig;
@@ -37,8 +40,17 @@ import eu.trentorise.opendata.commons.PeriodOfTime;
 import eu.trentorise.opendata.commons.SemVersion;
 import eu.trentorise.opendata.commons.validation.Ref;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.annotation.Nullable;
 
 /**
  * A module for handling Tod commons objects with Jackson JSON serialization
@@ -51,39 +63,46 @@ public final class TodCommonsModule extends SimpleModule {
 
 	private static final long serialVersionUID = 1L;
 
+	private static final ConcurrentMap<Class<?>, Version> JACKSON_VERSIONS = new ConcurrentHashMap<Class<?>, Version>();
+
 	/**
-	 * @since 1.1.0
+	 * Optional features of the module, all disabled by default. Deserializers
+	 * always accept both the default and the compact shapes, so compact
+	 * writers can be enabled without breaking existing readers of this
+	 * module.
+	 *
+	 * @since 2.0.0
 	 */
-	private abstract static class JacksonPeriodOfTime {
-
-		@JsonCreator
-		public static PeriodOfTime of(@JsonProperty("startDate") String startDate,
-				@JsonProperty("endDate") String endDate, @JsonProperty("rawString") String rawString) {
-			return null; // just because the method can't be abstract.
-		}
-	}
-	private abstract static class JacksonLocalizedString {
-
-		@JsonCreator
-		public static LocalizedString of(@JsonProperty("locale") Locale locale, @JsonProperty("string") String string) {
-			return null; // just because the method can't be abstract.
-		}
+	public enum Feature {
+		/**
+		 * Writes locales of a {@link Dict} having a single string as plain
+		 * strings instead of one element arrays, i.e.
+		 * <code>{"it":"a", "en":["b","c"]}</code>
+		 */
+		WRITE_COMPACT_DICT,
 
+		/**
+		 * Writes {@link LocalizedString} as an object with the locale as only
+		 * field, i.e. <code>{"it":"ciao"}</code>, instead of
+		 * <code>{"locale":"it","string":"ciao"}</code>. Unlike an array, it
+		 * is not unwrapped when read back as a sequence of root values.
+		 */
+		WRITE_COMPACT_LOCALIZED_STRING
 	}
 
 	/**
-	 * @since 1.1.0
+	 * Types whose (de)serializers are prepared by {@link #warmUp(ObjectMapper)}
 	 */
-	private abstract static class JacksonRef {
+	static final ImmutableList<Class<?>> WARM_UP_TYPES = ImmutableList.<Class<?>>of(Dict.class,
+			LazyDict.class, LocalizedString.class, PeriodOfTime.class, Ref.class, Locale.class);
 
-		@JsonCreator
-		public static Ref of(@JsonProperty("documentId") String documentId,
-				@JsonProperty("physicalRow") int physicalRow, @JsonProperty("physicalColumn") int physicalColumn,
-				@JsonProperty("jsonPath") String jsonPath) {
-			return null; // just because the method can't be abstract.
-		}
+	private final EnumSet<Feature> features = EnumSet.noneOf(Feature.class);
 
-	}
+	@Nullable
+	private transient StringPool stringPool;
+
+	@Nullable
+	private transient SerializedFormCache serializedFormCache;
 
 	/**
 	 * Creates the module and registers all the needed serializers and
@@ -92,29 +111,116 @@ public final class TodCommonsModule extends SimpleModule {
 	public TodCommonsModule() {
 		super("tod-commons-jackson", readJacksonVersion(TodCommonsModule.class));
 
-		addSerializer(Dict.class, new StdSerializer<Dict>(Dict.class) {
-			@Override
-			public void serialize(Dict value, JsonGenerator jgen, SerializerProvider provider) throws IOException {
-				jgen.writeObject(value.asMultimap());
-			}
-		});
+		addSerializers();
 
-		addDeserializer(Dict.class, new StdDeserializer<Dict>(Dict.class) {
+		addPooledDeserializers();
 
-			@Override
-			public Dict deserialize(JsonParser jp, DeserializationContext ctxt) throws IOException {
-				TypeReference ref = new TypeReference<ImmutableListMultimap<Locale, String>>() {
-				};
-				return Dict.of((ImmutableListMultimap) jp.readValueAs(ref));
-			}
-		});
+		addDeserializer(PeriodOfTime.class, new PeriodOfTimeDeserializer());
 
 		addDeserializer(Locale.class, new LocaleDeserializer());
+		addKeyDeserializer(Locale.class, new LocaleKeyDeserializer());
+	}
+
+	/**
+	 * Enables provided feature. Must be called before registering the module
+	 * into an object mapper.
+	 *
+	 * @since 2.0.0
+	 */
+	public TodCommonsModule enable(Feature feature) {
+		features.add(feature);
+		addSerializers();
+		return this;
+	}
+
+	/**
+	 * Disables provided feature. Must be called before registering the module
+	 * into an object mapper.
+	 *
+	 * @since 2.0.0
+	 */
+	public TodCommonsModule disable(Feature feature) {
+		features.remove(feature);
+		addSerializers();
+		return this;
+	}
 
-		setMixInAnnotation(LocalizedString.class, JacksonLocalizedString.class);
+	/**
+	 * @since 2.0.0
+	 */
+	public boolean isEnabled(Feature feature) {
+		return features.contains(feature);
+	}
 
-		setMixInAnnotation(Ref.class, JacksonRef.class);
+	/**
+	 * Sets the pool used to share equal strings of deserialized {@link Dict}
+	 * and {@link LocalizedString} and document ids of {@link Ref}, and if the
+	 * pool allows it whole localized strings, or removes it if null. By default no pool is used. Must be
+	 * called before registering the module into an object mapper.
+	 *
+	 * @since 2.0.0
+	 */
+	public TodCommonsModule setStringPool(@Nullable StringPool stringPool) {
+		this.stringPool = stringPool;
+		addPooledDeserializers();
+		return this;
+	}
+
+	/**
+	 * @since 2.0.0
+	 */
+	@Nullable
+	public StringPool getStringPool() {
+		return stringPool;
+	}
 
+	/**
+	 * (Re)registers deserializers according to current string pool.
+	 */
+	private void addPooledDeserializers() {
+		addDeserializer(Dict.class, new DictDeserializer(stringPool));
+		addDeserializer(LocalizedString.class, new LocalizedStringDeserializer(stringPool));
+		addDeserializer(LazyDict.class, new LazyDictDeserializer(stringPool));
+		addDeserializer(Ref.class, new RefDeserializer(stringPool));
+	}
+
+	/**
+	 * Sets the cache of serialized forms of {@link Dict},
+	 * {@link LocalizedString}, {@link PeriodOfTime} and {@link Ref}, or
+	 * removes it if null. By default no cache is used. Must be called before
+	 * registering the module into an object mapper.
+	 *
+	 * @since 2.0.0
+	 */
+	public TodCommonsModule setSerializedFormCache(@Nullable SerializedFormCache serializedFormCache) {
+		this.serializedFormCache = serializedFormCache;
+		addSerializers();
+		return this;
+	}
+
+	/**
+	 * @since 2.0.0
+	 */
+	@Nullable
+	public SerializedFormCache getSerializedFormCache() {
+		return serializedFormCache;
+	}
+
+	/**
+	 * (Re)registers serializers according to current features and serialized
+	 * form cache.
+	 */
+	private void addSerializers() {
+		addSerializer(Dict.class, cached(new DictSerializer(isEnabled(Feature.WRITE_COMPACT_DICT))));
+		addSerializer(LocalizedString.class,
+				cached(new LocalizedStringSerializer(isEnabled(Feature.WRITE_COMPACT_LOCALIZED_STRING))));
+		addSerializer(PeriodOfTime.class, cached(new PeriodOfTimeSerializer()));
+		addSerializer(Ref.class, cached(new RefSerializer()));
+		addSerializer(LazyDict.class, new LazyDictSerializer(isEnabled(Feature.WRITE_COMPACT_DICT)));
+	}
+
+	private <T> StdSerializer<T> cached(StdSerializer<T> serializer) {
+		return serializedFormCache == null ? serializer : new CachingSerializer<T>(serializer, serializedFormCache);
 	}
 
 	@Override
@@ -129,12 +235,18 @@ public final class TodCommonsModule extends SimpleModule {
 
 	/**
 	 * Returns the jackson version for an tod module by reading it from build
-	 * info at the root of provided class resources.
+	 * info at the root of provided class resources. Since 2.0.0 the version is
+	 * read only once per class.
 	 */
-	public static Version readJacksonVersion(Class clazz) {
-		SemVersion semver = SemVersion.of(TodConfig.of(clazz).getBuildInfo().getVersion());
-		return new Version(semver.getMajor(), semver.getMinor(), semver.getPatch(), semver.getPreReleaseVersion(),
-				"eu.trentorise.opendata.commons.jackson", "tod-commons-jackson");
+	public static Version readJacksonVersion(Class<?> clazz) {
+		Version ret = JACKSON_VERSIONS.get(clazz);
+		if (ret == null) {
+			SemVersion semver = SemVersion.of(TodConfig.of(clazz).getBuildInfo().getVersion());
+			ret = new Version(semver.getMajor(), semver.getMinor(), semver.getPatch(), semver.getPreReleaseVersion(),
+					"eu.trentorise.opendata.commons.jackson", "tod-commons-jackson");
+			JACKSON_VERSIONS.putIfAbsent(clazz, ret);
+		}
+		return ret;
 	}
 
 	/**
@@ -146,9 +258,43 @@ public final class TodCommonsModule extends SimpleModule {
 		om.registerModule(new TodCommonsModule());
 	}
 
+	/**
+	 * Eagerly builds serializers and deserializers of Tod commons types and of
+	 * their lists and string maps, so the first (de)serializations done with
+	 * the provided mapper don't pay for their construction. To be called
+	 * after registering modules, i.e. with
+	 * {@link #registerModulesInto(ObjectMapper)}
+	 *
+	 * @return the nanoseconds spent warming up
+	 * @since 2.0.0
+	 */
+	public static long warmUp(ObjectMapper om) {
+		long start = System.nanoTime();
+		TypeFactory tf = om.getTypeFactory();
+		for (Class<?> clazz : WARM_UP_TYPES) {
+			List<JavaType> types = ImmutableList.of(tf.constructType(clazz),
+					tf.constructCollectionType(List.class, clazz),
+					tf.constructCollectionType(ImmutableList.class, clazz),
+					tf.constructMapType(Map.class, String.class, clazz));
+			for (JavaType type : types) {
+				// readers and writers prefetch root (de)serializers, which
+				// stay cached in the mapper
+				om.writerFor(type);
+				om.readerFor(type);
+			}
+		}
+		long ret = System.nanoTime() - start;
+		LOG.log(Level.FINE, "Warmed up Tod commons (de)serializers in {0} ms", ret / 1000000);
+		return ret;
+	}
+
 	/**
 	 * Needed as nasty Jackson deserializes Locale.ROOT to null!
 	 * 
+	 * Since 2.0.0 frequent locales are taken from a bounded cache keyed by
+	 * token characters, and both {@code en_US} and {@code en-US} forms are
+	 * accepted.
+	 * 
 	 * @since 1.1.0
 	 */
 	public static class LocaleDeserializer extends StdDeserializer<Locale> {
@@ -170,12 +316,806 @@ public final class TodCommonsModule extends SimpleModule {
 			}
 
 			if (t == JsonToken.VALUE_STRING) {
-				String text = jp.getText();
-				return Locale.forLanguageTag(text);
+				return LocaleCache.get(jp.getTextCharacters(), jp.getTextOffset(), jp.getTextLength());
 			}
 
 			throw new IOException("Error while parsing Locale! Unrecognized JSON token: " + t.toString());
 		}
 
 	}
+
+	/**
+	 * Writes a {@link Dict} as a json object of locales to arrays of strings,
+	 * i.e. <code>{"it":["a","b"], "en":["c"]}</code>, emitting tokens
+	 * directly instead of going through the Guava multimap serializer.
+	 * 
+	 * Field names are the {@link Locale#toString()} of the locales, as
+	 * Jackson does for Locale keys. Their encoded form is cached.
+	 * 
+	 * In compact mode locales with a single string are written as plain
+	 * strings, i.e. <code>{"it":"a", "en":["b","c"]}</code>
+	 * 
+	 * @since 2.0.0
+	 */
+	public static class DictSerializer extends StdSerializer<Dict> {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Past this size new locale keys are encoded on the fly and not
+		 * cached, so weird input can't make the cache grow forever.
+		 */
+		private static final int MAX_CACHED_KEYS = 256;
+
+		private static final ConcurrentMap<Locale, SerializableString> KEYS = new ConcurrentHashMap<Locale, SerializableString>();
+
+		private final boolean compact;
+
+		public DictSerializer() {
+			this(false);
+		}
+
+		public DictSerializer(boolean compact) {
+			super(Dict.class);
+			this.compact = compact;
+		}
+
+		@Override
+		public void serialize(Dict value, JsonGenerator jgen, SerializerProvider provider) throws IOException {
+			jgen.writeStartObject();
+			for (Map.Entry<Locale, Collection<String>> entry : value.asMultimap().asMap().entrySet()) {
+				jgen.writeFieldName(localeKey(entry.getKey()));
+				// values of an ImmutableListMultimap are always lists
+				List<String> strings = (List<String>) entry.getValue();
+				if (compact && strings.size() == 1) {
+					jgen.writeString(strings.get(0));
+					continue;
+				}
+				jgen.writeStartArray(strings.size());
+				for (int i = 0; i < strings.size(); i++) {
+					jgen.writeString(strings.get(i));
+				}
+				jgen.writeEndArray();
+			}
+			jgen.writeEndObject();
+		}
+
+		@Override
+		public boolean isEmpty(SerializerProvider provider, Dict value) {
+			return value == null || value.isEmpty();
+		}
+
+		/**
+		 * Returns the encoded json field name for the provided locale.
+		 */
+		static SerializableString localeKey(Locale locale) {
+			SerializableString key = KEYS.get(locale);
+			if (key == null) {
+				key = new SerializedString(locale.toString());
+				if (KEYS.size() < MAX_CACHED_KEYS) {
+					KEYS.putIfAbsent(locale, key);
+				}
+			}
+			return key;
+		}
+	}
+
+	/**
+	 * Writes values through the provided {@link SerializedFormCache} when the
+	 * generator allows it, otherwise with the wrapped serializer, which also
+	 * writes values with type ids. The cache is not serialized.
+	 */
+	static final class CachingSerializer<T> extends StdSerializer<T> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final StdSerializer<T> serializer;
+
+		@Nullable
+		private final transient SerializedFormCache cache;
+
+		CachingSerializer(StdSerializer<T> serializer, SerializedFormCache cache) {
+			super(serializer.handledType());
+			this.serializer = serializer;
+			this.cache = cache;
+		}
+
+		@Override
+		public void serialize(T value, JsonGenerator jgen, SerializerProvider provider) throws IOException {
+			if (cache != null && SerializedFormCache.canWriteRaw(jgen)) {
+				jgen.writeRawValue(cache.get(value, serializer, provider));
+			} else {
+				serializer.serialize(value, jgen, provider);
+			}
+		}
+
+		/**
+		 * Cached forms have no type id, so typed values are always written by
+		 * the wrapped serializer.
+		 */
+		@Override
+		public void serializeWithType(T value, JsonGenerator jgen, SerializerProvider provider,
+				TypeSerializer typeSer) throws IOException {
+			serializer.serializeWithType(value, jgen, provider, typeSer);
+		}
+
+		@Override
+		public boolean isEmpty(SerializerProvider provider, T value) {
+			return serializer.isEmpty(provider, value);
+		}
+	}
+
+	/**
+	 * Reads a {@link Dict} from a json object of locales to arrays of strings
+	 * by walking parser tokens, without going through an intermediate Guava
+	 * multimap. Locale keys are resolved through the same cache of
+	 * {@link LocaleDeserializer}. A single string may also be given without
+	 * the array, as written by compact {@link DictSerializer}.
+	 * 
+	 * Locale keys may be either in {@link Locale#toString()} format (i.e.
+	 * {@code en_US}, as written by {@link DictSerializer}) or language tags
+	 * (i.e. {@code en-US}).
+	 * 
+	 * If a {@link StringPool} is given strings are taken from it. The pool is
+	 * not serialized.
+	 * 
+	 * If the reader has a {@link LocaleFilter}, values of locales it doesn't
+	 * keep are skipped.
+	 * 
+	 * @since 2.0.0
+	 */
+	public static class DictDeserializer extends StdDeserializer<Dict> {
+
+		private static final long serialVersionUID = 1L;
+
+		@Nullable
+		private final transient StringPool pool;
+
+		public DictDeserializer() {
+			this(null);
+		}
+
+		public DictDeserializer(@Nullable StringPool pool) {
+			super(Dict.class);
+			this.pool = pool;
+		}
+
+		@Override
+		public Dict deserialize(JsonParser jp, DeserializationContext ctxt) throws IOException {
+			JsonToken t = jp.getCurrentToken();
+			if (t == JsonToken.START_OBJECT) {
+				t = jp.nextToken();
+			} else if (t != JsonToken.FIELD_NAME && t != JsonToken.END_OBJECT) {
+				throw ctxt.mappingException(Dict.class, t);
+			}
+
+			if (t == JsonToken.END_OBJECT) {
+				return Dict.of();
+			}
+
+			LocaleFilter filter = LocaleFilter.get(ctxt);
+			if (filter != null) {
+				return readFiltered(jp, ctxt, t, filter);
+			}
+
+			Locale firstLocale = LocaleCache.get(jp.getCurrentName());
+			List<String> firstStrings = readStrings(jp, ctxt);
+			t = jp.nextToken();
+			if (t == JsonToken.END_OBJECT) {
+				return Dict.of(firstLocale, firstStrings);
+			}
+
+			Dict.Builder builder = Dict.builder();
+			builder.put(firstLocale, firstStrings);
+			for (; t == JsonToken.FIELD_NAME; t = jp.nextToken()) {
+				Locale locale = LocaleCache.get(jp.getCurrentName());
+				builder.put(locale, readStrings(jp, ctxt));
+			}
+			if (t != JsonToken.END_OBJECT) {
+				throw ctxt.mappingException(Dict.class, t);
+			}
+			return builder.build();
+		}
+
+		/**
+		 * Reads the locales kept by the filter from current field name on,
+		 * skipping the others.
+		 */
+		private Dict readFiltered(JsonParser jp, DeserializationContext ctxt, JsonToken t, LocaleFilter filter)
+				throws IOException {
+			Dict.Builder builder = null;
+			Locale fallbackLocale = null;
+			List<String> fallbackStrings = null;
+			int fallbackRank = Integer.MAX_VALUE;
+			for (; t == JsonToken.FIELD_NAME; t = jp.nextToken()) {
+				Locale locale = LocaleCache.get(jp.getCurrentName());
+				if (filter.keeps(locale)) {
+					List<String> strings = readStrings(jp, ctxt);
+					if (!strings.isEmpty()) {
+						if (builder == null) {
+							builder = Dict.builder();
+						}
+						builder.put(locale, strings);
+					}
+					continue;
+				}
+				int rank = builder == null ? filter.fallbackRank(locale) : -1;
+				if (rank >= 0 && rank < fallbackRank) {
+					List<String> strings = readStrings(jp, ctxt);
+					if (!strings.isEmpty()) {
+						fallbackLocale = locale;
+						fallbackStrings = strings;
+						fallbackRank = rank;
+					}
+				} else {
+					jp.nextToken();
+					jp.skipChildren();
+				}
+			}
+			if (t != JsonToken.END_OBJECT) {
+				throw ctxt.mappingException(Dict.class, t);
+			}
+			if (builder != null) {
+				return builder.build();
+			}
+			return fallbackLocale == null ? Dict.of() : Dict.of(fallbackLocale, fallbackStrings);
+		}
+
+		/**
+		 * Reads the array of strings or the single string following current
+		 * field name.
+		 */
+		private List<String> readStrings(JsonParser jp, DeserializationContext ctxt) throws IOException {
+			JsonToken t = jp.nextToken();
+			if (t == JsonToken.VALUE_STRING) {
+				return ImmutableList.of(text(jp, pool));
+			}
+			if (t != JsonToken.START_ARRAY) {
+				throw ctxt.wrongTokenException(jp, JsonToken.START_ARRAY,
+						"Expected string or array of strings for locale " + jp.getCurrentName());
+			}
+			t = jp.nextToken();
+			if (t == JsonToken.END_ARRAY) {
+				return ImmutableList.of();
+			}
+			String first = readString(jp, ctxt, t);
+			t = jp.nextToken();
+			if (t == JsonToken.END_ARRAY) {
+				return ImmutableList.of(first);
+			}
+			List<String> ret = new ArrayList<String>();
+			ret.add(first);
+			for (; t != JsonToken.END_ARRAY; t = jp.nextToken()) {
+				ret.add(readString(jp, ctxt, t));
+			}
+			return ret;
+		}
+
+		private String readString(JsonParser jp, DeserializationContext ctxt, JsonToken t) throws IOException {
+			if (t != JsonToken.VALUE_STRING) {
+				throw ctxt.mappingException("Error while parsing Dict! Expected a string, found instead token " + t);
+			}
+			return text(jp, pool);
+		}
+	}
+
+	/**
+	 * Writes a {@link LazyDict} like {@link DictSerializer} does, decoding all
+	 * of its locales.
+	 * 
+	 * @since 2.0.0
+	 */
+	public static class LazyDictSerializer extends StdSerializer<LazyDict> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final DictSerializer dictSerializer;
+
+		public LazyDictSerializer() {
+			this(false);
+		}
+
+		public LazyDictSerializer(boolean compact) {
+			super(LazyDict.class);
+			this.dictSerializer = new DictSerializer(compact);
+		}
+
+		@Override
+		public void serialize(LazyDict value, JsonGenerator jgen, SerializerProvider provider) throws IOException {
+			dictSerializer.serialize(value.toDict(), jgen, provider);
+		}
+
+		@Override
+		public boolean isEmpty(SerializerProvider provider, LazyDict value) {
+			return value == null || value.isEmpty();
+		}
+	}
+
+	/**
+	 * Reads a {@link LazyDict} in the formats of {@link DictDeserializer}.
+	 * Objects within json bytes read through {@link Jacksonizer} are only
+	 * scanned, otherwise the dict is read eagerly with
+	 * {@link DictDeserializer}. Both honour the {@link LocaleFilter} of the
+	 * reader, if any.
+	 * 
+	 * @since 2.0.0
+	 */
+	public static class LazyDictDeserializer extends StdDeserializer<LazyDict> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final DictDeserializer dictDeserializer;
+
+		public LazyDictDeserializer() {
+			this(null);
+		}
+
+		public LazyDictDeserializer(@Nullable StringPool pool) {
+			super(LazyDict.class);
+			this.dictDeserializer = new DictDeserializer(pool);
+		}
+
+		@Override
+		public LazyDict deserialize(JsonParser jp, DeserializationContext ctxt) throws IOException {
+			LazyDict ret = LazyDict.read(jp, LocaleFilter.get(ctxt));
+			if (ret != null) {
+				return ret;
+			}
+			return LazyDict.of(dictDeserializer.deserialize(jp, ctxt));
+		}
+	}
+
+	/**
+	 * Returns the text of current string token, from the pool if any.
+	 */
+	private static String text(JsonParser jp, @Nullable StringPool pool) throws IOException {
+		if (pool == null) {
+			return jp.getText();
+		}
+		return pool.intern(jp.getTextCharacters(), jp.getTextOffset(), jp.getTextLength());
+	}
+
+	/**
+	 * Writes a {@link LocalizedString} as
+	 * <code>{"locale":"it","string":"ciao"}</code> or, in compact mode, as
+	 * <code>{"it":"ciao"}</code>, the same shape of a compact {@link Dict}
+	 * with a single string. Locales are written in {@link Locale#toString()}
+	 * format, like Jackson does.
+	 * 
+	 * @since 2.0.0
+	 */
+	public static class LocalizedStringSerializer extends StdSerializer<LocalizedString> {
+
+		private static final long serialVersionUID = 1L;
+
+		static final SerializableString LOCALE_FIELD = new SerializedString("locale");
+		static final SerializableString STRING_FIELD = new SerializedString("string");
+
+		private final boolean compact;
+
+		public LocalizedStringSerializer() {
+			this(false);
+		}
+
+		public LocalizedStringSerializer(boolean compact) {
+			super(LocalizedString.class);
+			this.compact = compact;
+		}
+
+		@Override
+		public void serialize(LocalizedString value, JsonGenerator jgen, SerializerProvider provider)
+				throws IOException {
+			jgen.writeStartObject();
+			writeFields(value, jgen);
+			jgen.writeEndObject();
+		}
+
+		/**
+		 * Both forms are objects, so the type id goes in the same way.
+		 */
+		@Override
+		public void serializeWithType(LocalizedString value, JsonGenerator jgen, SerializerProvider provider,
+				TypeSerializer typeSer) throws IOException {
+			typeSer.writeTypePrefixForObject(value, jgen);
+			writeFields(value, jgen);
+			typeSer.writeTypeSuffixForObject(value, jgen);
+		}
+
+		private void writeFields(LocalizedString value, JsonGenerator jgen) throws IOException {
+			if (compact) {
+				jgen.writeFieldName(DictSerializer.localeKey(value.loc()));
+				jgen.writeString(value.str());
+			} else {
+				jgen.writeFieldName(LOCALE_FIELD);
+				jgen.writeString(value.loc().toString());
+				jgen.writeFieldName(STRING_FIELD);
+				jgen.writeString(value.str());
+			}
+		}
+	}
+
+	/**
+	 * Reads a {@link LocalizedString} either from object
+	 * <code>{"locale":"it","string":"ciao"}</code>, from compact object
+	 * <code>{"it":"ciao"}</code> or from array <code>["it","ciao"]</code>.
+	 * Both locale and string are required and can't be null. Locales are
+	 * resolved like in {@link LocaleDeserializer}.
+	 * 
+	 * If a {@link StringPool} is given strings, and if the pool allows it
+	 * whole localized strings, are taken from it. The pool is not serialized.
+	 * 
+	 * If the reader has a {@link LocaleFilter}, localized strings in locales
+	 * neither kept nor among its fallbacks are read as
+	 * {@link LocalizedString#of()}.
+	 * 
+	 * @since 2.0.0
+	 */
+	public static class LocalizedStringDeserializer extends StdDeserializer<LocalizedString> {
+
+		private static final long serialVersionUID = 1L;
+
+		@Nullable
+		private final transient StringPool pool;
+
+		public LocalizedStringDeserializer() {
+			this(null);
+		}
+
+		public LocalizedStringDeserializer(@Nullable StringPool pool) {
+			super(LocalizedString.class);
+			this.pool = pool;
+		}
+
+		@Override
+		public LocalizedString deserialize(JsonParser jp, DeserializationContext ctxt) throws IOException {
+			JsonToken t = jp.getCurrentToken();
+			if (t == JsonToken.START_ARRAY) {
+				Locale locale = readLocale(jp, ctxt, jp.nextToken());
+				String string = readString(jp, ctxt, jp.nextToken());
+				if (jp.nextToken() != JsonToken.END_ARRAY) {
+					throw ctxt.wrongTokenException(jp, JsonToken.END_ARRAY,
+							"Expected LocalizedString array to have only locale and string");
+				}
+				return localizedString(locale, string, ctxt);
+			}
+
+			if (t == JsonToken.START_OBJECT) {
+				t = jp.nextToken();
+			} else if (t != JsonToken.FIELD_NAME && t != JsonToken.END_OBJECT) {
+				throw ctxt.mappingException(LocalizedString.class, t);
+			}
+
+			if (t == JsonToken.FIELD_NAME && !"locale".equals(jp.getCurrentName())
+					&& !"string".equals(jp.getCurrentName())) {
+				// compact {"it":"ciao"}, unless it is just an unknown field
+				String field = jp.getCurrentName();
+				if (jp.nextToken() == JsonToken.VALUE_STRING) {
+					String string = text(jp, pool);
+					t = jp.nextToken();
+					if (t == JsonToken.END_OBJECT) {
+						return localizedString(LocaleCache.get(field), string, ctxt);
+					}
+					handleUnknownProperty(jp, ctxt, LocalizedString.class, field);
+				} else {
+					handleUnknownProperty(jp, ctxt, LocalizedString.class, field);
+					t = jp.nextToken();
+				}
+			}
+
+			Locale locale = null;
+			String string = null;
+			for (; t == JsonToken.FIELD_NAME; t = jp.nextToken()) {
+				String field = jp.getCurrentName();
+				if ("locale".equals(field)) {
+					locale = readLocale(jp, ctxt, jp.nextToken());
+				} else if ("string".equals(field)) {
+					string = readString(jp, ctxt, jp.nextToken());
+				} else {
+					jp.nextToken();
+					handleUnknownProperty(jp, ctxt, LocalizedString.class, field);
+				}
+			}
+			if (locale == null) {
+				throw ctxt.mappingException("Error while parsing LocalizedString! Missing locale.");
+			}
+			if (string == null) {
+				throw ctxt.mappingException("Error while parsing LocalizedString! Missing string.");
+			}
+			return localizedString(locale, string, ctxt);
+		}
+
+		private LocalizedString localizedString(Locale locale, String string, DeserializationContext ctxt) {
+			LocaleFilter filter = LocaleFilter.get(ctxt);
+			if (filter != null && !filter.keeps(locale) && filter.fallbackRank(locale) < 0) {
+				return LocalizedString.of();
+			}
+			LocalizedString ret = LocalizedString.of(locale, string);
+			return pool == null ? ret : pool.intern(ret);
+		}
+
+		private static Locale readLocale(JsonParser jp, DeserializationContext ctxt, JsonToken t)
+				throws IOException {
+			if (t != JsonToken.VALUE_STRING) {
+				throw ctxt.mappingException("Error while parsing LocalizedString! Expected a locale string, found instead token " + t);
+			}
+			return LocaleCache.get(jp.getTextCharacters(), jp.getTextOffset(), jp.getTextLength());
+		}
+
+		private String readString(JsonParser jp, DeserializationContext ctxt, JsonToken t)
+				throws IOException {
+			if (t != JsonToken.VALUE_STRING) {
+				throw ctxt.mappingException("Error while parsing LocalizedString! Expected a string, found instead token " + t);
+			}
+			return text(jp, pool);
+		}
+	}
+
+	/**
+	 * Writes a {@link PeriodOfTime} as
+	 * <code>{"startDate":"1980","endDate":"1990","rawString":"from 1980 to 1990"}</code>
+	 * 
+	 * @since 2.0.0
+	 */
+	public static class PeriodOfTimeSerializer extends StdSerializer<PeriodOfTime> {
+
+		private static final long serialVersionUID = 1L;
+
+		static final SerializableString START_DATE_FIELD = new SerializedString("startDate");
+		static final SerializableString END_DATE_FIELD = new SerializedString("endDate");
+		static final SerializableString RAW_STRING_FIELD = new SerializedString("rawString");
+
+		public PeriodOfTimeSerializer() {
+			super(PeriodOfTime.class);
+		}
+
+		@Override
+		public void serialize(PeriodOfTime value, JsonGenerator jgen, SerializerProvider provider)
+				throws IOException {
+			jgen.writeStartObject();
+			writeFields(value, jgen);
+			jgen.writeEndObject();
+		}
+
+		@Override
+		public void serializeWithType(PeriodOfTime value, JsonGenerator jgen, SerializerProvider provider,
+				TypeSerializer typeSer) throws IOException {
+			typeSer.writeTypePrefixForObject(value, jgen);
+			writeFields(value, jgen);
+			typeSer.writeTypeSuffixForObject(value, jgen);
+		}
+
+		private static void writeFields(PeriodOfTime value, JsonGenerator jgen) throws IOException {
+			jgen.writeFieldName(START_DATE_FIELD);
+			jgen.writeString(value.getStartDate());
+			jgen.writeFieldName(END_DATE_FIELD);
+			jgen.writeString(value.getEndDate());
+			jgen.writeFieldName(RAW_STRING_FIELD);
+			jgen.writeString(value.getRawString());
+		}
+	}
+
+	/**
+	 * Reads a {@link PeriodOfTime} from an object with {@code startDate},
+	 * {@code endDate} and {@code rawString} string fields. Missing fields get
+	 * the defaults of {@link PeriodOfTime#of()}, null ones are not allowed.
+	 * Dates which {@link PeriodOfTime} rejects are reported as mapping
+	 * errors.
+	 * 
+	 * @since 2.0.0
+	 */
+	public static class PeriodOfTimeDeserializer extends StdDeserializer<PeriodOfTime> {
+
+		private static final long serialVersionUID = 1L;
+
+		public PeriodOfTimeDeserializer() {
+			super(PeriodOfTime.class);
+		}
+
+		@Override
+		public PeriodOfTime deserialize(JsonParser jp, DeserializationContext ctxt) throws IOException {
+			JsonToken t = jp.getCurrentToken();
+			if (t == JsonToken.START_OBJECT) {
+				t = jp.nextToken();
+			} else if (t != JsonToken.FIELD_NAME && t != JsonToken.END_OBJECT) {
+				throw ctxt.mappingException(PeriodOfTime.class, t);
+			}
+
+			String startDate = null;
+			String endDate = null;
+			String rawString = null;
+			for (; t == JsonToken.FIELD_NAME; t = jp.nextToken()) {
+				String field = jp.getCurrentName();
+				if ("startDate".equals(field)) {
+					startDate = readString(jp, ctxt, field);
+				} else if ("endDate".equals(field)) {
+					endDate = readString(jp, ctxt, field);
+				} else if ("rawString".equals(field)) {
+					rawString = readString(jp, ctxt, field);
+				} else {
+					jp.nextToken();
+					handleUnknownProperty(jp, ctxt, PeriodOfTime.class, field);
+				}
+			}
+
+			try {
+				if (startDate != null && endDate != null && rawString != null) {
+					return PeriodOfTime.of(startDate, endDate, rawString);
+				}
+				PeriodOfTime ret = PeriodOfTime.of();
+				if (startDate != null) {
+					ret = ret.withStartDate(startDate);
+				}
+				if (endDate != null) {
+					ret = ret.withEndDate(endDate);
+				}
+				if (rawString != null) {
+					ret = ret.withRawString(rawString);
+				}
+				return ret;
+			}
+			catch (RuntimeException ex) {
+				throw ctxt.mappingException("Error while parsing PeriodOfTime! " + ex.getMessage());
+			}
+		}
+
+		private static String readString(JsonParser jp, DeserializationContext ctxt, String field)
+				throws IOException {
+			JsonToken t = jp.nextToken();
+			if (t != JsonToken.VALUE_STRING) {
+				throw ctxt.mappingException("Error while parsing PeriodOfTime! Expected a string for " + field
+						+ ", found instead token " + t);
+			}
+			return jp.getText();
+		}
+	}
+
+	/**
+	 * Writes a {@link Ref} as
+	 * <code>{"documentId":"a.csv","physicalRow":3,"physicalColumn":2,"tracePath":"$.x"}</code>
+	 * omitting fields which have default value (empty strings, -1 rows and
+	 * columns), as they make up most of refs in large validation reports.
+	 * 
+	 * To write refs while they are produced see
+	 * {@link Jacksonizer#writeValues(java.io.OutputStream)}
+	 * 
+	 * @since 2.0.0
+	 */
+	public static class RefSerializer extends StdSerializer<Ref> {
+
+		private static final long serialVersionUID = 1L;
+
+		static final SerializableString DOCUMENT_ID_FIELD = new SerializedString("documentId");
+		static final SerializableString PHYSICAL_ROW_FIELD = new SerializedString("physicalRow");
+		static final SerializableString PHYSICAL_COLUMN_FIELD = new SerializedString("physicalColumn");
+		static final SerializableString TRACE_PATH_FIELD = new SerializedString("tracePath");
+
+		public RefSerializer() {
+			super(Ref.class);
+		}
+
+		@Override
+		public void serialize(Ref value, JsonGenerator jgen, SerializerProvider provider) throws IOException {
+			jgen.writeStartObject();
+			writeFields(value, jgen);
+			jgen.writeEndObject();
+		}
+
+		@Override
+		public void serializeWithType(Ref value, JsonGenerator jgen, SerializerProvider provider,
+				TypeSerializer typeSer) throws IOException {
+			typeSer.writeTypePrefixForObject(value, jgen);
+			writeFields(value, jgen);
+			typeSer.writeTypeSuffixForObject(value, jgen);
+		}
+
+		private static void writeFields(Ref value, JsonGenerator jgen) throws IOException {
+			if (!value.getDocumentId().isEmpty()) {
+				jgen.writeFieldName(DOCUMENT_ID_FIELD);
+				jgen.writeString(value.getDocumentId());
+			}
+			if (value.getPhysicalRow() != -1) {
+				jgen.writeFieldName(PHYSICAL_ROW_FIELD);
+				jgen.writeNumber(value.getPhysicalRow());
+			}
+			if (value.getPhysicalColumn() != -1) {
+				jgen.writeFieldName(PHYSICAL_COLUMN_FIELD);
+				jgen.writeNumber(value.getPhysicalColumn());
+			}
+			if (!value.getTracePath().isEmpty()) {
+				jgen.writeFieldName(TRACE_PATH_FIELD);
+				jgen.writeString(value.getTracePath());
+			}
+		}
+	}
+
+	/**
+	 * Reads a {@link Ref} from an object with {@code documentId},
+	 * {@code physicalRow}, {@code physicalColumn} and {@code tracePath}
+	 * fields. Missing fields get the defaults of {@link Ref#of()}.
+	 * 
+	 * Refs of a report usually point to the same few documents: if a
+	 * {@link StringPool} is given, document ids are taken from it, so equal
+	 * ones share the same instance without allocating a new one.
+	 * 
+	 * @since 2.0.0
+	 */
+	public static class RefDeserializer extends StdDeserializer<Ref> {
+
+		private static final long serialVersionUID = 1L;
+
+		@Nullable
+		private final transient StringPool pool;
+
+		public RefDeserializer() {
+			this(null);
+		}
+
+		/**
+		 * @param pool if not null, document ids are interned in it
+		 */
+		public RefDeserializer(@Nullable StringPool pool) {
+			super(Ref.class);
+			this.pool = pool;
+		}
+
+		@Override
+		public Ref deserialize(JsonParser jp, DeserializationContext ctxt) throws IOException {
+			JsonToken t = jp.getCurrentToken();
+			if (t == JsonToken.START_OBJECT) {
+				t = jp.nextToken();
+			} else if (t != JsonToken.FIELD_NAME && t != JsonToken.END_OBJECT) {
+				throw ctxt.mappingException(Ref.class, t);
+			}
+
+			Ref.Builder builder = Ref.builder();
+			for (; t == JsonToken.FIELD_NAME; t = jp.nextToken()) {
+				String field = jp.getCurrentName();
+				if ("documentId".equals(field)) {
+					expect(jp, ctxt, JsonToken.VALUE_STRING, field);
+					builder.setDocumentId(text(jp, pool));
+				} else if ("physicalRow".equals(field)) {
+					expect(jp, ctxt, JsonToken.VALUE_NUMBER_INT, field);
+					builder.setPhysicalRow(jp.getLongValue());
+				} else if ("physicalColumn".equals(field)) {
+					expect(jp, ctxt, JsonToken.VALUE_NUMBER_INT, field);
+					builder.setPhysicalColumn(jp.getLongValue());
+				} else if ("tracePath".equals(field)) {
+					expect(jp, ctxt, JsonToken.VALUE_STRING, field);
+					builder.setTracePath(jp.getText());
+				} else {
+					jp.nextToken();
+					handleUnknownProperty(jp, ctxt, Ref.class, field);
+				}
+			}
+			try {
+				return builder.build();
+			}
+			catch (RuntimeException ex) {
+				throw ctxt.mappingException("Error while parsing Ref! " + ex.getMessage());
+			}
+		}
+
+		private static void expect(JsonParser jp, DeserializationContext ctxt, JsonToken expected, String field)
+				throws IOException {
+			JsonToken t = jp.nextToken();
+			if (t != expected) {
+				throw ctxt.mappingException("Error while parsing Ref! Expected " + expected + " for " + field
+						+ ", found instead token " + t);
+			}
+		}
+	}
+
+	/**
+	 * Deserializes locales used as map keys, i.e. in {@code Map<Locale, ?>} or
+	 * Guava multimaps. Accepts the same formats of {@link LocaleDeserializer}.
+	 * 
+	 * @since 2.0.0
+	 */
+	public static class LocaleKeyDeserializer extends KeyDeserializer {
+
+		@Override
+		public Object deserializeKey(String key, DeserializationContext ctxt) throws IOException {
+			return LocaleCache.get(key);
+		}
+	}
 }
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.commons.test.jackson;
+
+import eu.trentorise.opendata.commons.Dict;
+import eu.trentorise.opendata.commons.TodConfig;
+import eu.trentorise.opendata.commons.jackson.ChunkedJsonDecoder;
+import eu.trentorise.opendata.commons.jackson.Jacksonizer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Logger;
+import org.junit.Assert;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * @since 2.0.0
+ */
+public class ChunkedJsonDecoderTest {
+
+    private static final Logger LOG = Logger.getLogger(ChunkedJsonDecoderTest.class.getName());
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @BeforeClass
+    public static void beforeClass() {
+        TodConfig.init(ChunkedJsonDecoderTest.class);
+    }
+
+    /**
+     * Feeds the json in chunks of provided size, alternating heap and direct
+     * buffers.
+     */
+    private static <T> List<T> decode(ChunkedJsonDecoder<T> decoder, String json, int chunkSize) {
+        byte[] bytes = json.getBytes(UTF8);
+        List<T> ret = new ArrayList<T>();
+        for (int i = 0; i < bytes.length; i += chunkSize) {
+            int len = Math.min(chunkSize, bytes.length - i);
+            ByteBuffer chunk;
+            if ((i / chunkSize) % 2 == 0) {
+                chunk = ByteBuffer.wrap(bytes, i, len);
+            } else {
+                chunk = ByteBuffer.allocateDirect(len);
+                chunk.put(bytes, i, len);
+                chunk.flip();
+            }
+            ret.addAll(decoder.feed(chunk));
+            assertEquals(chunk.limit(), chunk.position());
+        }
+        ret.addAll(decoder.finish());
+        return ret;
+    }
+
+    @Test
+    public void testRootValues() {
+        Dict d1 = Dict.of(Locale.ITALIAN, "a \"{[ciao]}\" \\");
+        Dict d2 = Dict.builder().put(Locale.ENGLISH, "hello", "hi").put(Locale.FRENCH, "salut \u00e7").build();
+        String json = Jacksonizer.of().toJson(d1) + "\n" + Jacksonizer.of().toJson(d2) + "\n"
+                + Jacksonizer.of().toJson(Dict.of());
+
+        for (int chunkSize = 1; chunkSize <= json.length(); chunkSize++) {
+            List<Dict> dicts = decode(ChunkedJsonDecoder.of(Jacksonizer.of(), Dict.class), json, chunkSize);
+            assertEquals(Arrays.asList(d1, d2, Dict.of()), dicts);
+        }
+    }
+
+    @Test
+    public void testIncremental() {
+        ChunkedJsonDecoder<Dict> decoder = ChunkedJsonDecoder.of(Jacksonizer.of(), Dict.class);
+        byte[] bytes = "{\"it\":[\"a\"]} {\"en\":".getBytes(UTF8);
+        List<Dict> dicts = decoder.feed(bytes, 0, bytes.length);
+        assertEquals(Arrays.asList(Dict.of(Locale.ITALIAN, "a")), dicts);
+        bytes = "[\"b\"]}".getBytes(UTF8);
+        assertEquals(Arrays.asList(Dict.of(Locale.ENGLISH, "b")), decoder.feed(bytes, 0, bytes.length));
+        assertTrue(decoder.finish().isEmpty());
+    }
+
+    @Test
+    public void testScalars() {
+        assertEquals(Arrays.asList(1, 23, -4),
+                decode(ChunkedJsonDecoder.of(Jacksonizer.of(), Integer.class), " 1 23\n-4", 2));
+        assertEquals(Arrays.asList(Locale.ITALIAN, Locale.ENGLISH),
+                decode(ChunkedJsonDecoder.of(Jacksonizer.of(), Locale.class), "\"it\"\"en\"", 3));
+    }
+
+    @Test
+    public void testArrayElements() {
+        String json = " [ {\"it\":[\"a\"]}, {} ,{\"en\":[\"b]\"]} ] ";
+        for (int chunkSize = 1; chunkSize <= json.length(); chunkSize++) {
+            List<Dict> dicts = decode(ChunkedJsonDecoder.ofArrayElements(Jacksonizer.of(), Dict.class), json,
+                    chunkSize);
+            assertEquals(Arrays.asList(Dict.of(Locale.ITALIAN, "a"), Dict.of(), Dict.of(Locale.ENGLISH, "b]")),
+                    dicts);
+        }
+
+        assertEquals(Arrays.asList(1, 2),
+                decode(ChunkedJsonDecoder.ofArrayElements(Jacksonizer.of(), Integer.class), "[1,2]", 1));
+        assertTrue(decode(ChunkedJsonDecoder.ofArrayElements(Jacksonizer.of(), Integer.class), "[]", 1).isEmpty());
+        assertTrue(decode(ChunkedJsonDecoder.ofArrayElements(Jacksonizer.of(), Integer.class), "", 1).isEmpty());
+    }
+
+    private static void assertFails(ChunkedJsonDecoder<?> decoder, String json) {
+        try {
+            decode(decoder, json, 1);
+            Assert.fail("Should have failed on " + json);
+        }
+        catch (IllegalArgumentException ex) {
+            LOG.fine(ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testErrors() {
+        assertFails(ChunkedJsonDecoder.of(Jacksonizer.of(), Dict.class), "{\"it\":[\"a\"]");
+        assertFails(ChunkedJsonDecoder.of(Jacksonizer.of(), Dict.class), "{},{}");
+        assertFails(ChunkedJsonDecoder.of(Jacksonizer.of(), Dict.class), "{}}");
+        assertFails(ChunkedJsonDecoder.of(Jacksonizer.of(), Dict.class), "{\"it\":3}");
+        assertFails(ChunkedJsonDecoder.ofArrayElements(Jacksonizer.of(), Integer.class), "{}");
+        assertFails(ChunkedJsonDecoder.ofArrayElements(Jacksonizer.of(), Integer.class), "[1,]");
+        assertFails(ChunkedJsonDecoder.ofArrayElements(Jacksonizer.of(), Integer.class), "[1 2]");
+        assertFails(ChunkedJsonDecoder.ofArrayElements(Jacksonizer.of(), Integer.class), "[,1]");
+        assertFails(ChunkedJsonDecoder.ofArrayElements(Jacksonizer.of(), Integer.class), "[1] 2");
+        assertFails(ChunkedJsonDecoder.ofArrayElements(Jacksonizer.of(), Integer.class), "[1");
+
+        ChunkedJsonDecoder<Dict> decoder = ChunkedJsonDecoder.of(Jacksonizer.of(), Dict.class);
+        decoder.finish();
+        try {
+            decoder.feed(ByteBuffer.allocate(1));
+            Assert.fail();
+        }
+        catch (IllegalStateException ex) {
+
+        }
+
+        try {
+            ChunkedJsonDecoder.of(Jacksonizer.ofSmile(), Dict.class);
+            Assert.fail();
+        }
+        catch (IllegalStateException ex) {
+
+        }
+    }
+}
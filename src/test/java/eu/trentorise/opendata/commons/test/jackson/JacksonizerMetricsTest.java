@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.commons.test.jackson;
+
+import eu.trentorise.opendata.commons.Dict;
+import eu.trentorise.opendata.commons.TodConfig;
+import eu.trentorise.opendata.commons.jackson.Jacksonizer;
+import eu.trentorise.opendata.commons.jackson.JacksonizerListener.Operation;
+import eu.trentorise.opendata.commons.jackson.JacksonizerMetrics;
+import eu.trentorise.opendata.commons.jackson.JacksonizerMetrics.Stats;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Locale;
+import java.util.logging.Logger;
+import org.junit.Assert;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * @since 2.0.0
+ */
+public class JacksonizerMetricsTest {
+
+    private static final Logger LOG = Logger.getLogger(JacksonizerMetricsTest.class.getName());
+
+    @BeforeClass
+    public static void beforeClass() {
+        TodConfig.init(JacksonizerMetricsTest.class);
+    }
+
+    private static Stats find(JacksonizerMetrics metrics, Operation op, Class<?> clazz) {
+        for (Stats stats : metrics.getStats()) {
+            if (stats.getOperation() == op && stats.getType().equals(clazz.getName())) {
+                return stats;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testMetrics() {
+        JacksonizerMetrics metrics = new JacksonizerMetrics();
+        Jacksonizer jz = Jacksonizer.of().withListener(metrics);
+
+        Dict dict = Dict.of(Locale.ITALIAN, "a");
+        String json = jz.toJson(dict);
+        byte[] bytes = jz.toJsonBytes(dict);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        jz.writeTo(dict, out);
+
+        jz.fromJson(json, Dict.class);
+        jz.fromJson(new ByteArrayInputStream(bytes), Dict.class);
+        try {
+            jz.fromJson("{\"it\":3}", Dict.class);
+            Assert.fail();
+        }
+        catch (IllegalArgumentException ex) {
+
+        }
+
+        Stats ser = find(metrics, Operation.SERIALIZE, Dict.class);
+        assertEquals(3, ser.getCount());
+        assertEquals(0, ser.getFailures());
+        assertEquals(json.length() + 2 * bytes.length, ser.getTotalSize());
+        assertTrue(ser.getTotalNanos() > 0);
+
+        Stats deser = find(metrics, Operation.DESERIALIZE, Dict.class);
+        assertEquals(3, deser.getCount());
+        assertEquals(1, deser.getFailures());
+        assertEquals(json.length() + bytes.length, deser.getTotalSize());
+
+        long histogramCount = 0;
+        for (long n : deser.getNanosHistogram()) {
+            histogramCount += n;
+        }
+        assertEquals(3, histogramCount);
+        // {"it":["a"]} is 12 long, so it falls in [8, 16) bucket
+        assertEquals(12, bytes.length);
+        assertEquals(5, ser.getSizeHistogram().size());
+        assertEquals(3L, (long) ser.getSizeHistogram().get(4));
+
+        // plain Jacksonizer is not affected
+        Jacksonizer.of().toJson(dict);
+        assertEquals(3, ser.getCount());
+
+        String exported = Jacksonizer.of().toJson(metrics.getStats());
+        LOG.fine(exported);
+        assertTrue(exported.contains("\"failures\":1"));
+
+        metrics.reset();
+        assertNull(find(metrics, Operation.SERIALIZE, Dict.class));
+    }
+}
@@ -15,16 +15,44 @@
  */
 package eu.trentorise.opendata.commons.test.jackson;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.util.BufferRecycler;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import com.google.common.hash.Hashing;
+import eu.trentorise.opendata.commons.Dict;
 import eu.trentorise.opendata.commons.LocalizedString;
+import eu.trentorise.opendata.commons.PeriodOfTime;
 import eu.trentorise.opendata.commons.TodConfig;
+import eu.trentorise.opendata.commons.jackson.EncodedJson;
 import eu.trentorise.opendata.commons.jackson.Jacksonizer;
+import eu.trentorise.opendata.commons.jackson.JacksonizerMetrics;
+import eu.trentorise.opendata.commons.jackson.PooledJsonFactory;
 import eu.trentorise.opendata.commons.jackson.TodCommonsModule;
+import eu.trentorise.opendata.commons.validation.Ref;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
 import java.util.logging.Logger;
 import org.junit.Assert;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -83,6 +111,498 @@ public class JacksonizerTest {
 
     }
 
+    /**
+     * @since 2.0.0
+     */
+    @Test
+    public void testBytesAndStreams() throws IOException {
+        Jacksonizer jz = Jacksonizer.of();
+        Dict dict = Dict.builder().put(Locale.ITALIAN, "ciao", "\u00e8").put(Locale.ENGLISH, "hello").build();
+
+        byte[] bytes = jz.toJsonBytes(dict);
+        assertArrayEquals(jz.toJson(dict).getBytes("UTF-8"), bytes);
+        assertEquals(dict, jz.fromJson(bytes, Dict.class));
+
+        byte[] padded = new byte[bytes.length + 4];
+        System.arraycopy(bytes, 0, padded, 2, bytes.length);
+        assertEquals(dict, jz.fromJson(padded, 2, bytes.length, Dict.class));
+        for (int[] range : new int[][]{{-1, 2}, {2, -1}, {5, bytes.length}, {1, Integer.MAX_VALUE}}) {
+            try {
+                jz.fromJson(padded, range[0], range[1], Dict.class);
+                Assert.fail("Should have failed with offset " + range[0] + " and len " + range[1]);
+            }
+            catch (IllegalArgumentException ex) {
+
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        jz.writeTo(dict, out);
+        out.write('!'); // stream must be still open
+        assertEquals(jz.toJson(dict) + "!", out.toString("UTF-8"));
+        assertEquals(dict, jz.fromJson(new ByteArrayInputStream(bytes), Dict.class));
+
+        StringWriter writer = new StringWriter();
+        jz.writeTo(dict, writer);
+        assertEquals(jz.toJson(dict), writer.toString());
+        assertEquals(dict, jz.fromJson(new StringReader(writer.toString()), Dict.class));
+
+        for (ByteBuffer buffer : new ByteBuffer[]{ByteBuffer.allocate(100), ByteBuffer.allocateDirect(100)}) {
+            buffer.put((byte) ' ');
+            jz.writeTo(dict, buffer);
+            assertEquals(bytes.length + 1, buffer.position());
+            buffer.flip();
+            assertEquals(dict, jz.fromJson(buffer, Dict.class));
+            assertEquals(0, buffer.position());
+        }
+
+        try {
+            jz.writeTo(dict, ByteBuffer.allocate(3));
+            Assert.fail();
+        }
+        catch (IllegalArgumentException ex) {
+
+        }
+
+        try {
+            jz.fromJson("garbage".getBytes("UTF-8"), Dict.class);
+            Assert.fail();
+        }
+        catch (IllegalArgumentException ex) {
+
+        }
+    }
+
+    /**
+     * @since 2.0.0
+     */
+    @Test
+    public void testGenericTypes() {
+        Jacksonizer jz = Jacksonizer.of();
+        List<LocalizedString> strings = ImmutableList.of(LocalizedString.of(Locale.ITALIAN, "ciao"),
+                LocalizedString.of(Locale.ENGLISH, "hello"));
+        String json = jz.toJson(strings);
+
+        List<LocalizedString> res1 = jz.fromJson(json, new TypeReference<List<LocalizedString>>() {
+        });
+        assertEquals(strings, res1);
+        // second time reader comes from cache
+        assertEquals(strings, jz.fromJson(json, new TypeReference<List<LocalizedString>>() {
+        }));
+
+        JavaType type = jz.createJacksonMapper().getTypeFactory()
+                .constructCollectionType(ImmutableList.class, Dict.class);
+        ImmutableList<Dict> dicts = ImmutableList.of(Dict.of(Locale.ITALIAN, "a"), Dict.of());
+        ImmutableList<Dict> res2 = jz.fromJson(jz.toJsonBytes(dicts), type);
+        assertEquals(dicts, res2);
+        assertEquals(dicts, jz.fromJson(new ByteArrayInputStream(jz.toJsonBytes(dicts)),
+                new TypeReference<ImmutableList<Dict>>() {
+        }));
+
+        assertEquals("null", jz.toJson(null));
+    }
+
+    /**
+     * @since 2.0.0
+     */
+    @Test
+    public void testOfShared() {
+        ObjectMapper om1 = new ObjectMapper();
+        TodCommonsModule.registerModulesInto(om1);
+        ObjectMapper om2 = om1.copy();
+
+        assertSame(Jacksonizer.ofShared(om1), Jacksonizer.ofShared(om1));
+        assertNotSame(Jacksonizer.ofShared(om1), Jacksonizer.ofShared(om2));
+        assertNotSame(Jacksonizer.of(om1), Jacksonizer.of(om1));
+
+        LocalizedString ls = LocalizedString.of(Locale.ITALIAN, "ciao");
+        assertEquals(ls, Jacksonizer.ofShared(om1).fromJson(Jacksonizer.ofShared(om2).toJson(ls), LocalizedString.class));
+    }
+
+    /**
+     * Error messages must not hold the whole input
+     *
+     * @since 2.0.0
+     */
+    @Test
+    public void testFromJsonErrorIsBounded() throws IOException {
+        StringBuilder sb = new StringBuilder("{\"it\":[");
+        for (int i = 0; i < 10000; i++) {
+            sb.append("\"abcdefghij\",");
+        }
+        sb.append("\"x\", 666]}");
+        String json = sb.toString();
+
+        try {
+            Jacksonizer.of().fromJson(json, Dict.class);
+            Assert.fail();
+        }
+        catch (IllegalArgumentException ex) {
+            LOG.fine(ex.getMessage());
+            assertTrue(ex.getMessage().length() < 500);
+            assertTrue(ex.getMessage().contains(Dict.class.getName()));
+            assertTrue(ex.getMessage().contains("\"x\", 666]}"));
+        }
+
+        byte[] bytes = ("  " + json).getBytes("UTF-8");
+        try {
+            Jacksonizer.of().fromJson(bytes, 2, bytes.length - 2, Dict.class);
+            Assert.fail();
+        }
+        catch (IllegalArgumentException ex) {
+            LOG.fine(ex.getMessage());
+            assertTrue(ex.getMessage().length() < 500);
+            assertTrue(ex.getMessage().contains("byte offset"));
+            assertTrue(ex.getMessage().contains("\"x\", 666]}"));
+        }
+    }
+
+    /**
+     * @since 2.0.0
+     */
+    @Test
+    public void testSequences() throws IOException {
+        Jacksonizer jz = Jacksonizer.of();
+        List<Dict> dicts = ImmutableList.of(Dict.of(Locale.ITALIAN, "a"), Dict.of(), Dict.of(Locale.ENGLISH, "b", "c"));
+
+        ByteArrayOutputStream ndjson = new ByteArrayOutputStream();
+        SequenceWriter sw = jz.writeValues(ndjson);
+        for (Dict dict : dicts) {
+            sw.write(dict);
+        }
+        sw.close();
+        assertEquals("{\"it\":[\"a\"]}\n{}\n{\"en\":[\"b\",\"c\"]}", ndjson.toString("UTF-8"));
+
+        ByteArrayOutputStream array = new ByteArrayOutputStream();
+        SequenceWriter aw = jz.writeValuesAsArray(array);
+        for (Dict dict : dicts) {
+            aw.write(dict);
+        }
+        aw.close();
+        assertEquals(jz.toJson(dicts), array.toString("UTF-8"));
+
+        for (ByteArrayOutputStream out : ImmutableList.of(ndjson, array)) {
+            MappingIterator<Dict> iter = jz.readValues(new ByteArrayInputStream(out.toByteArray()), Dict.class);
+            assertEquals(dicts, iter.readAll());
+            iter.close();
+        }
+
+        MappingIterator<LocalizedString> iter = jz.readValues(
+                new StringReader("{\"locale\":\"it\",\"string\":\"a\"}\n{\"locale\":\"en\",\"string\":\"b\"}"),
+                LocalizedString.class);
+        assertEquals(LocalizedString.of(Locale.ITALIAN, "a"), iter.next());
+        assertEquals(LocalizedString.of(Locale.ENGLISH, "b"), iter.next());
+        assertFalse(iter.hasNext());
+    }
+
+    /**
+     * @since 2.0.0
+     */
+    @Test
+    public void testWithJsonBytes() {
+        final Jacksonizer jz = Jacksonizer.of();
+        final Dict dict = Dict.of(Locale.ITALIAN, "\u00e8");
+
+        byte[] copy = jz.withJsonBytes(dict, new Jacksonizer.BytesCallback<byte[]>() {
+            @Override
+            public byte[] onBytes(byte[] bytes, int offset, int len) {
+                assertEquals(dict, jz.fromJson(bytes, offset, len, Dict.class));
+
+                // nested calls get their own buffer
+                byte[] nested = jz.withJsonBytes(Dict.of(Locale.ENGLISH, "b"), new Jacksonizer.BytesCallback<byte[]>() {
+                    @Override
+                    public byte[] onBytes(byte[] bytes, int offset, int len) {
+                        return Arrays.copyOfRange(bytes, offset, offset + len);
+                    }
+                });
+                assertEquals(Dict.of(Locale.ENGLISH, "b"), jz.fromJson(nested, Dict.class));
+                return Arrays.copyOfRange(bytes, offset, offset + len);
+            }
+        });
+        assertArrayEquals(jz.toJsonBytes(dict), copy);
+
+        // buffer grows as needed and is reused afterwards
+        Dict.Builder builder = Dict.builder();
+        for (int i = 0; i < 10000; i++) {
+            builder.put(Locale.ITALIAN, "string " + i);
+        }
+        final Dict big = builder.build();
+        for (int i = 0; i < 3; i++) {
+            int len = jz.withJsonBytes(i == 1 ? big : dict, new Jacksonizer.BytesCallback<Integer>() {
+                @Override
+                public Integer onBytes(byte[] bytes, int offset, int len) {
+                    return len;
+                }
+            });
+            assertEquals(jz.toJsonBytes(i == 1 ? big : dict).length, len);
+        }
+    }
+
+    /**
+     * @since 2.0.0
+     */
+    @Test
+    public void testEncode() throws IOException {
+        Dict dict = Dict.of(Locale.ITALIAN, "\u00e8");
+        EncodedJson encoded = Jacksonizer.of().encode(dict);
+        assertArrayEquals(Jacksonizer.of().toJsonBytes(dict), encoded.toByteArray());
+        assertEquals(Hashing.murmur3_128().hashBytes(encoded.toByteArray()), encoded.getHash());
+        assertEquals("\"" + encoded.getHash() + "\"", encoded.getETag());
+        assertEquals(encoded.getETag(), Jacksonizer.of().encode(Dict.of(Locale.ITALIAN, "\u00e8")).getETag());
+        assertFalse(encoded.getETag().equals(Jacksonizer.of().encode(Dict.of(Locale.ITALIAN, "e")).getETag()));
+        assertNotSame(encoded, Jacksonizer.of().encode(dict));
+        assertEquals(0, Jacksonizer.of().getEncodingMemoStats().requestCount());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoded.writeTo(out);
+        assertArrayEquals(encoded.toByteArray(), out.toByteArray());
+        assertTrue(encoded.asByteBuffer().isReadOnly());
+        assertEquals(encoded.size(), encoded.asByteBuffer().remaining());
+        assertEquals("null", new String(Jacksonizer.of().encode(null).toByteArray(), "UTF-8"));
+
+        JacksonizerMetrics metrics = new JacksonizerMetrics();
+        Jacksonizer memo = Jacksonizer.of().withEncodingMemo(1000).withListener(metrics);
+        EncodedJson first = memo.encode(dict);
+        assertSame(first, memo.encode(dict));
+        assertNotSame(first, memo.encode(Dict.of(Locale.ITALIAN, "\u00e8")));
+        assertEquals(1, memo.getEncodingMemoStats().hitCount());
+        assertEquals(2, memo.getEncodingMemoStats().missCount());
+        assertEquals(3, metrics.getStats().get(0).getCount());
+
+        // results bigger than the memo are not kept
+        Jacksonizer small = Jacksonizer.of().withEncodingMemo(5);
+        assertNotSame(small.encode(dict), small.encode(dict));
+    }
+
+    /**
+     * @since 2.0.0
+     */
+    @Test
+    public void testPooledBuffers() throws InterruptedException {
+        final Jacksonizer jz = Jacksonizer.ofPooledBuffers();
+        Dict.Builder builder = Dict.builder();
+        for (int i = 0; i < 2000; i++) {
+            builder.put(Locale.ITALIAN, "string " + i);
+        }
+        final Dict dict = builder.build();
+        final String json = Jacksonizer.of().toJson(dict);
+
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 50; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < 20; j++) {
+                            assertEquals(json, jz.toJson(dict));
+                            assertEquals(dict, jz.fromJson(jz.toJsonBytes(dict), Dict.class));
+                            assertEquals(dict, jz.fromJson(new ByteArrayInputStream(json.getBytes("UTF-8")), Dict.class));
+                        }
+                    }
+                    catch (Throwable t) {
+                        errors.add(t);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(ImmutableList.of(), errors);
+
+        ObjectMapper copy = jz.createJacksonMapper();
+        assertTrue(copy.getFactory() instanceof PooledJsonFactory);
+    }
+
+    /**
+     * Buffers given back through final BufferRecycler.releaseByteBuffer, as
+     * ByteArrayBuilder does, are pooled too
+     *
+     * @since 2.0.0
+     */
+    @Test
+    public void testPooledConcatBuffers() {
+        BufferRecycler recycler = new PooledJsonFactory()._getBufferRecycler();
+        byte[] buf = recycler.allocByteBuffer(BufferRecycler.BYTE_WRITE_CONCAT_BUFFER);
+        recycler.releaseByteBuffer(BufferRecycler.BYTE_WRITE_CONCAT_BUFFER, buf);
+        assertSame(buf, recycler.allocByteBuffer(BufferRecycler.BYTE_WRITE_CONCAT_BUFFER));
+        assertNotSame(buf, recycler.allocByteBuffer(BufferRecycler.BYTE_WRITE_CONCAT_BUFFER));
+    }
+
+    /**
+     * Refs of a validation report can be written while they are produced
+     *
+     * @since 2.0.0
+     */
+    @Test
+    public void testStreamRefs() throws IOException {
+        Jacksonizer jz = Jacksonizer.of();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SequenceWriter sw = jz.writeValues(out);
+        List<Ref> refs = new ArrayList<Ref>();
+        for (int i = 0; i < 100; i++) {
+            Ref ref = Ref.builder().setDocumentId("a.csv").setPhysicalRow(i).build();
+            refs.add(ref);
+            sw.write(ref);
+            sw.flush();
+            assertTrue(out.toString("UTF-8").endsWith("\"physicalRow\":" + i + "}"));
+        }
+        sw.close();
+        assertEquals(refs, jz.readValues(new ByteArrayInputStream(out.toByteArray()), Ref.class).readAll());
+    }
+
+    /**
+     * @since 2.0.0
+     */
+    @Test
+    public void testBinaryFormats() throws IOException {
+        Dict.Builder builder = Dict.builder();
+        for (int i = 0; i < 20; i++) {
+            builder.put(i % 2 == 0 ? Locale.ITALY : Locale.ENGLISH, "string " + i);
+        }
+        Dict dict = builder.put(Locale.ROOT, "\u00e8").build();
+        List<Dict> dicts = ImmutableList.of(dict, dict, Dict.of(), Dict.of(Locale.ITALY, "a"));
+
+        for (Jacksonizer jz : ImmutableList.of(Jacksonizer.ofSmile(), Jacksonizer.ofCbor())) {
+            byte[] bytes = jz.toJsonBytes(dict);
+            assertEquals(dict, jz.fromJson(bytes, Dict.class));
+            assertEquals(dict, jz.fromJson(new ByteArrayInputStream(bytes), Dict.class));
+            assertEquals(dict, jz.fromJson(ByteBuffer.wrap(bytes), Dict.class));
+
+            assertEquals(dicts, jz.fromJson(jz.toJsonBytes(dicts), new TypeReference<List<Dict>>() {
+            }));
+
+            LocalizedString ls = LocalizedString.of(Locale.ITALY, "ciao");
+            assertEquals(ls, jz.fromJson(jz.toJsonBytes(ls), LocalizedString.class));
+            assertEquals(Locale.ITALY, jz.fromJson(jz.toJsonBytes(Locale.ITALY), Locale.class));
+            PeriodOfTime period = PeriodOfTime.of("1980", "1990", "bla");
+            assertEquals(period, jz.fromJson(jz.toJsonBytes(period), PeriodOfTime.class));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            SequenceWriter sw = jz.writeValues(out);
+            for (Dict d : dicts) {
+                sw.write(d);
+            }
+            sw.close();
+            MappingIterator<Dict> iter = jz.readValues(new ByteArrayInputStream(out.toByteArray()), Dict.class);
+            assertEquals(dicts, iter.readAll());
+
+            try {
+                jz.toJson(dict);
+                Assert.fail();
+            }
+            catch (IllegalStateException ex) {
+
+            }
+
+            try {
+                jz.fromJson(new byte[]{1, 2, 3}, Dict.class);
+                Assert.fail();
+            }
+            catch (IllegalArgumentException ex) {
+
+            }
+        }
+
+        // repeated locale tags and strings are back references
+        assertTrue(Jacksonizer.ofSmile().toJsonBytes(dicts).length < Jacksonizer.of().toJsonBytes(dicts).length / 2);
+    }
+
+    /**
+     * Loads classes of the jackson package by itself, as if the optional
+     * binary format jars were missing from the classpath.
+     */
+    private static class NoBinaryFormatsClassLoader extends ClassLoader {
+
+        NoBinaryFormatsClassLoader() {
+            super(JacksonizerTest.class.getClassLoader());
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (name.startsWith("com.fasterxml.jackson.dataformat.")) {
+                throw new ClassNotFoundException(name);
+            }
+            if (!name.startsWith(Jacksonizer.class.getPackage().getName() + ".")) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> ret = findLoadedClass(name);
+                if (ret == null) {
+                    try {
+                        byte[] bytes = ByteStreams.toByteArray(
+                                getParent().getResourceAsStream(name.replace('.', '/') + ".class"));
+                        ret = defineClass(name, bytes, 0, bytes.length);
+                    }
+                    catch (IOException ex) {
+                        throw new ClassNotFoundException(name, ex);
+                    }
+                }
+                if (resolve) {
+                    resolveClass(ret);
+                }
+                return ret;
+            }
+        }
+    }
+
+    /**
+     * Smile and CBOR jars are optional, json must work without them.
+     *
+     * @since 2.0.0
+     */
+    @Test
+    public void testWithoutBinaryFormats() throws Exception {
+        ClassLoader loader = new NoBinaryFormatsClassLoader();
+        try {
+            loader.loadClass("com.fasterxml.jackson.dataformat.smile.SmileFactory");
+            Assert.fail();
+        }
+        catch (ClassNotFoundException ex) {
+
+        }
+
+        Class<?> jacksonizerClass = loader.loadClass(Jacksonizer.class.getName());
+        assertNotSame(Jacksonizer.class, jacksonizerClass);
+        Object jacksonizer = jacksonizerClass.getMethod("of").invoke(null);
+        Dict dict = Dict.of(Locale.ITALIAN, "ciao");
+        String json = (String) jacksonizerClass.getMethod("toJson", Object.class).invoke(jacksonizer, dict);
+        assertEquals(Jacksonizer.of().toJson(dict), json);
+        assertEquals(dict, jacksonizerClass.getMethod("fromJson", byte[].class, Class.class)
+                .invoke(jacksonizer, json.getBytes("UTF-8"), Dict.class));
+
+        for (String factory : Arrays.asList("ofSmile", "ofCbor")) {
+            try {
+                jacksonizerClass.getMethod(factory).invoke(null);
+                Assert.fail();
+            }
+            catch (InvocationTargetException ex) {
+                assertTrue(ex.getCause() instanceof NoClassDefFoundError);
+            }
+        }
+    }
+
+    /**
+     * @since 2.0.0
+     */
+    @Test
+    public void testWarmUp() {
+        ObjectMapper om = new ObjectMapper();
+        TodCommonsModule.registerModulesInto(om);
+        assertTrue(TodCommonsModule.warmUp(om) > 0);
+
+        Jacksonizer jz = Jacksonizer.of(om);
+        assertTrue(jz.warmUp() > 0);
+        Dict dict = Dict.of(Locale.ITALIAN, "a");
+        assertEquals(dict, jz.fromJson(jz.toJson(dict), Dict.class));
+        List<Dict> dicts = ImmutableList.of(dict);
+        assertEquals(dicts, jz.fromJson(jz.toJson(dicts), new TypeReference<List<Dict>>() {
+        }));
+    }
+
     @Test
     public void testObjectMapperCopy() {
         ObjectMapper om1 = Jacksonizer.of().createJacksonMapper();
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.commons.test.jackson;
+
+import com.google.common.collect.ImmutableList;
+import eu.trentorise.opendata.commons.Dict;
+import eu.trentorise.opendata.commons.TodConfig;
+import eu.trentorise.opendata.commons.jackson.Jacksonizer;
+import eu.trentorise.opendata.commons.jackson.JsonExtractor;
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.logging.Logger;
+import org.junit.Assert;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * @since 2.0.0
+ */
+public class JsonExtractorTest {
+
+    private static final Logger LOG = Logger.getLogger(JsonExtractorTest.class.getName());
+
+    private static final String JSON = "{\"id\":3, \"items\":["
+            + "{\"name\":{\"it\":[\"mela\"],\"en\":[\"apple\",\"pome\"]}, \"n\":[1,2]},"
+            + "{\"name\":{\"it\":[\"pera\"]}, \"n\":null},"
+            + "{\"a/b\":{\"c~d\":true}}"
+            + "]}";
+
+    @BeforeClass
+    public static void beforeClass() {
+        TodConfig.init(JsonExtractorTest.class);
+    }
+
+    private static <T> void check(String expression, Class<T> clazz, Object... expected) {
+        JsonExtractor path = JsonExtractor.compile(expression);
+        assertEquals(expression, path.toString());
+        assertEquals(Arrays.asList(expected), Jacksonizer.of().extract(JSON, path, clazz));
+        assertEquals(Arrays.asList(expected), Jacksonizer.of().extract(JSON.getBytes(), path, clazz));
+        assertEquals(Arrays.asList(expected),
+                Jacksonizer.of().extract(new ByteArrayInputStream(JSON.getBytes()), path, clazz));
+    }
+
+    @Test
+    public void testPointer() {
+        check("/id", Integer.class, 3);
+        check("/items/0/name/en/1", String.class, "pome");
+        check("/items/1/name", Dict.class, Dict.of(Locale.ITALIAN, "pera"));
+        check("/items/1/n", Integer.class, (Object) null);
+        check("/items/2/a~1b/c~0d", Boolean.class, true);
+        check("/items/5/name", Dict.class);
+        check("/id/0", Integer.class);
+        check("/missing", Integer.class);
+    }
+
+    @Test
+    public void testPath() {
+        check("$.id", Integer.class, 3);
+        check("$.items[0].name.it[0]", String.class, "mela");
+        check("$['items'][1][\"name\"]", Dict.class, Dict.of(Locale.ITALIAN, "pera"));
+        check("$.items[*].name.it[0]", String.class, "mela", "pera");
+        check("$.items.*.name.*[0]", String.class, "mela", "apple", "pera");
+        check("$.items[0].n[*]", Integer.class, 1, 2);
+        check("$.items[*].name", Dict.class, Dict.of(Locale.ITALIAN, "mela").with(Locale.ENGLISH, "apple", "pome"),
+                Dict.of(Locale.ITALIAN, "pera"));
+    }
+
+    @Test
+    public void testWholeDocument() {
+        assertEquals(ImmutableList.of(Dict.of(Locale.ITALIAN, "a")),
+                Jacksonizer.of().extract("{\"it\":[\"a\"]}", JsonExtractor.compile("$"), Dict.class));
+        assertEquals(ImmutableList.of(Dict.of(Locale.ITALIAN, "a")),
+                Jacksonizer.of().extract("{\"it\":[\"a\"]}", JsonExtractor.compile(""), Dict.class));
+        assertEquals(Collections.emptyList(), Jacksonizer.of().extract("", JsonExtractor.compile("$"), Dict.class));
+    }
+
+    @Test
+    public void testStopsEarly() {
+        // malformed rest is never read
+        String json = "{\"a\":1, \"b\": garbage";
+        assertEquals(ImmutableList.of(1), Jacksonizer.of().extract(json, JsonExtractor.compile("/a"), Integer.class));
+        assertEquals(ImmutableList.of(1), Jacksonizer.of().extract(new ByteArrayInputStream(json.getBytes()),
+                JsonExtractor.compile("$.a"), Integer.class));
+    }
+
+    @Test
+    public void testErrors() {
+        for (String expr : Arrays.asList("a.b", "$..a", "$.a[1:2]", "$.a[?(@.b)]", "$.a[0,1]", "$.a[", "$a",
+                "$.a['b','c']", "$.")) {
+            try {
+                JsonExtractor.compile(expr);
+                Assert.fail("Should have failed on " + expr);
+            }
+            catch (IllegalArgumentException ex) {
+                LOG.fine(ex.getMessage());
+            }
+        }
+
+        try {
+            Jacksonizer.of().extract("{\"a\":{\"it\":3}}", JsonExtractor.compile("/a"), Dict.class);
+            Assert.fail();
+        }
+        catch (IllegalArgumentException ex) {
+            assertTrue(ex.getMessage().contains(Dict.class.getName()));
+        }
+
+        try {
+            Jacksonizer.of().extract("{\"a\":[1,", JsonExtractor.compile("$.b"), Dict.class);
+            Assert.fail();
+        }
+        catch (IllegalArgumentException ex) {
+
+        }
+    }
+}
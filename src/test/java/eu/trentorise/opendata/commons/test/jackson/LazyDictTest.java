@@ -0,0 +1,157 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.commons.test.jackson;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import eu.trentorise.opendata.commons.Dict;
+import eu.trentorise.opendata.commons.LocalizedString;
+import eu.trentorise.opendata.commons.TodConfig;
+import eu.trentorise.opendata.commons.jackson.Jacksonizer;
+import eu.trentorise.opendata.commons.jackson.LazyDict;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.junit.Assert;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * @since 2.0.0
+ */
+public class LazyDictTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String JSON = "{ \"it\" : [\"mela\", \"pomo\"], \"en\":\"apple \\\"red\\\"\", \"de\":[],"
+            + " \"f\\u0072\":[\"pomme \u00e7\"], \"it\":[\"melo\"]}";
+
+    private static final Dict DICT = Dict.builder().put(Locale.ITALIAN, "mela", "pomo", "melo")
+            .put(Locale.ENGLISH, "apple \"red\"").put(Locale.FRENCH, "pomme \u00e7").build();
+
+    @BeforeClass
+    public static void beforeClass() {
+        TodConfig.init(LazyDictTest.class);
+    }
+
+    @Test
+    public void testLazy() {
+        byte[] bytes = ("  [" + JSON + "]").getBytes(UTF8);
+        LazyDict lazy = Jacksonizer.of().fromJson(bytes, 2, bytes.length - 2, LazyDict[].class)[0];
+
+        // bytes are copied
+        Arrays.fill(bytes, (byte) ' ');
+
+        assertEquals(ImmutableSet.of(Locale.ITALIAN, Locale.ENGLISH, Locale.FRENCH), lazy.locales());
+        assertFalse(lazy.isDecoded(Locale.ITALIAN));
+        assertFalse(lazy.isDecoded(Locale.ENGLISH));
+        assertTrue(lazy.isDecoded(Locale.GERMAN));
+
+        assertEquals(ImmutableList.of("mela", "pomo", "melo"), lazy.get(Locale.ITALIAN));
+        assertTrue(lazy.isDecoded(Locale.ITALIAN));
+        assertFalse(lazy.isDecoded(Locale.ENGLISH));
+        assertEquals("apple \"red\"", lazy.str(Locale.ENGLISH));
+        assertFalse(lazy.isDecoded(Locale.FRENCH));
+        assertEquals("", lazy.str(Locale.GERMAN));
+        assertEquals(LocalizedString.of(Locale.ENGLISH, "apple \"red\""), lazy.some(Locale.GERMAN, Locale.ENGLISH));
+        assertFalse(lazy.isDecoded(Locale.FRENCH));
+
+        assertEquals(DICT, lazy.toDict());
+        assertTrue(lazy.isDecoded(Locale.FRENCH));
+        assertEquals(LazyDict.of(DICT), lazy);
+        assertEquals(LazyDict.of(DICT).hashCode(), lazy.hashCode());
+    }
+
+    @Test
+    public void testOfBytes() {
+        byte[] bytes = ("xx" + JSON).getBytes(UTF8);
+        LazyDict lazy = LazyDict.of(bytes, 2, bytes.length - 2);
+        assertFalse(lazy.isDecoded(Locale.FRENCH));
+        assertEquals("pomme \u00e7", lazy.str(Locale.FRENCH));
+        assertEquals(DICT, lazy.toDict());
+
+        assertTrue(LazyDict.of("{\"it\":[]}".getBytes(UTF8), 0, 9).isEmpty());
+
+        for (String json : Arrays.asList("[]", "{\"it\":3}", "{\"it\":[\"a\",1]}", "{\"it\":[\"a\"]", "{} {}")) {
+            try {
+                LazyDict.of(json.getBytes(UTF8), 0, json.length());
+                Assert.fail("Should have failed on " + json);
+            }
+            catch (IllegalArgumentException ex) {
+
+            }
+        }
+
+        for (int[] range : new int[][]{{-1, 2}, {2, -1}, {5, bytes.length}, {1, Integer.MAX_VALUE}}) {
+            try {
+                LazyDict.of(bytes, range[0], range[1]);
+                Assert.fail("Should have failed on range " + Arrays.toString(range));
+            }
+            catch (IllegalArgumentException ex) {
+
+            }
+        }
+    }
+
+    @Test
+    public void testNested() {
+        Map<String, LazyDict> map = Jacksonizer.of().fromJson(
+                ("{\"a\":" + JSON + ", \"b\":{}}").getBytes(UTF8), new TypeReference<Map<String, LazyDict>>() {
+                });
+        assertFalse(map.get("a").isDecoded(Locale.ITALIAN));
+        assertEquals(DICT, map.get("a").toDict());
+        assertTrue(map.get("b").isEmpty());
+    }
+
+    @Test
+    public void testEager() {
+        // text input can't be scanned
+        LazyDict lazy = Jacksonizer.of().fromJson(JSON, LazyDict.class);
+        assertTrue(lazy.isDecoded(Locale.ITALIAN));
+        assertEquals(DICT, lazy.toDict());
+
+        List<LazyDict> list = Jacksonizer.of().fromJson("[{}]", new TypeReference<List<LazyDict>>() {
+        });
+        assertTrue(list.get(0).isEmpty());
+    }
+
+    @Test
+    public void testSerialize() {
+        LazyDict lazy = Jacksonizer.of().fromJson(JSON.getBytes(UTF8), LazyDict.class);
+        String json = Jacksonizer.of().toJson(lazy);
+        assertEquals(Jacksonizer.of().toJson(DICT), json);
+        assertEquals(lazy, Jacksonizer.of().fromJson(json.getBytes(UTF8), LazyDict.class));
+    }
+
+    @Test
+    public void testErrors() {
+        for (String json : Arrays.asList("{\"it\":3}", "{\"it\":[\"a\",{}]}", "[]")) {
+            try {
+                Jacksonizer.of().fromJson(json.getBytes(UTF8), LazyDict.class);
+                Assert.fail("Should have failed on " + json);
+            }
+            catch (IllegalArgumentException ex) {
+
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.commons.test.jackson;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import eu.trentorise.opendata.commons.Dict;
+import eu.trentorise.opendata.commons.LocalizedString;
+import eu.trentorise.opendata.commons.TodConfig;
+import eu.trentorise.opendata.commons.jackson.Jacksonizer;
+import eu.trentorise.opendata.commons.jackson.LazyDict;
+import eu.trentorise.opendata.commons.jackson.LocaleFilter;
+import eu.trentorise.opendata.commons.jackson.TodCommonsModule;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Locale;
+import org.junit.Assert;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * @since 2.0.0
+ */
+public class LocaleFilterTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final Locale IT_IT = new Locale("it", "IT");
+
+    /**
+     * German value is malformed for a Dict, but skipped
+     */
+    private static final String JSON = "{\"de\":{\"x\":[1]}, \"it_IT\":[\"a\",\"b\"], \"en\":\"c\", \"fr\":[\"d\"]}";
+
+    @BeforeClass
+    public static void beforeClass() {
+        TodConfig.init(LocaleFilterTest.class);
+    }
+
+    @Test
+    public void testDict() {
+        Jacksonizer jacksonizer = Jacksonizer.of().withLocaleFilter(LocaleFilter.of(Locale.ITALIAN, Locale.ENGLISH));
+        Dict expected = Dict.builder().put(IT_IT, "a", "b").put(Locale.ENGLISH, "c").build();
+        assertEquals(expected, jacksonizer.fromJson(JSON, Dict.class));
+        assertEquals(expected, jacksonizer.fromJson(JSON.getBytes(UTF8), Dict.class));
+        assertEquals(ImmutableList.of(expected, Dict.of()),
+                jacksonizer.fromJson("[" + JSON + ", {\"fr\":[\"x\"]}]", new TypeReference<List<Dict>>() {
+                }));
+
+        // doesn't affect other jacksonizers
+        assertNull(Jacksonizer.of().getLocaleFilter());
+        try {
+            Jacksonizer.of().fromJson(JSON, Dict.class);
+            Assert.fail();
+        }
+        catch (IllegalArgumentException ex) {
+
+        }
+    }
+
+    @Test
+    public void testFallbacks() {
+        Jacksonizer jacksonizer = Jacksonizer.of()
+                .withLocaleFilter(LocaleFilter.of(Locale.ITALIAN).withFallbacks(Locale.ENGLISH, Locale.FRENCH));
+        assertEquals(Dict.of(Locale.FRENCH, "f"),
+                jacksonizer.fromJson("{\"de\":[\"d\"], \"fr\":[\"f\"]}", Dict.class));
+        assertEquals(Dict.of(Locale.ENGLISH, "e"),
+                jacksonizer.fromJson("{\"fr\":[\"f\"], \"en\":[\"e\"]}", Dict.class));
+        assertEquals(Dict.of(Locale.FRENCH, "f"),
+                jacksonizer.fromJson("{\"fr\":[\"f\"], \"en\":[]}", Dict.class));
+        assertEquals(Dict.of(Locale.ITALIAN, "i"),
+                jacksonizer.fromJson("{\"en\":[\"e\"], \"it\":[\"i\"]}", Dict.class));
+        assertEquals(Dict.of(), jacksonizer.fromJson("{\"de\":[\"d\"]}", Dict.class));
+    }
+
+    @Test
+    public void testLocalizedString() {
+        Jacksonizer jacksonizer = Jacksonizer.of()
+                .withLocaleFilter(LocaleFilter.of(Locale.ITALIAN).withFallbacks(Locale.ENGLISH));
+        assertEquals(LocalizedString.of(IT_IT, "a"),
+                jacksonizer.fromJson("{\"locale\":\"it_IT\",\"string\":\"a\"}", LocalizedString.class));
+        assertEquals(LocalizedString.of(Locale.ENGLISH, "b"),
+                jacksonizer.fromJson("[\"en\",\"b\"]", LocalizedString.class));
+        assertEquals(LocalizedString.of(),
+                jacksonizer.fromJson("{\"string\":\"c\",\"locale\":\"de\"}", LocalizedString.class));
+        assertEquals(LocalizedString.of(Locale.ITALIAN, "d"),
+                jacksonizer.fromJson("{\"it\":\"d\"}", LocalizedString.class));
+    }
+
+    /**
+     * A dropped localized string reads the same as an empty one
+     */
+    @Test
+    public void testDroppedLocalizedString() {
+        Jacksonizer jacksonizer = Jacksonizer.of().withLocaleFilter(LocaleFilter.of(Locale.ITALIAN));
+        String empty = Jacksonizer.of().toJson(LocalizedString.of());
+        assertEquals(LocalizedString.of(), Jacksonizer.of().fromJson(empty, LocalizedString.class));
+        assertEquals(LocalizedString.of(), jacksonizer.fromJson(empty, LocalizedString.class));
+        assertEquals(LocalizedString.of(), jacksonizer.fromJson("[\"de\",\"d\"]", LocalizedString.class));
+        assertEquals(ImmutableList.of(LocalizedString.of(), LocalizedString.of(Locale.ITALIAN, "i")),
+                jacksonizer.fromJson("[{\"de\":\"d\"}, {\"it\":\"i\"}]", new TypeReference<List<LocalizedString>>() {
+                }));
+    }
+
+    @Test
+    public void testLazyDict() {
+        Jacksonizer jacksonizer = Jacksonizer.of()
+                .withLocaleFilter(LocaleFilter.of(Locale.ENGLISH).withFallbacks(Locale.FRENCH));
+        LazyDict lazy = jacksonizer.fromJson(JSON.getBytes(UTF8), LazyDict.class);
+        assertEquals(ImmutableSet.of(Locale.ENGLISH), lazy.locales());
+        assertFalse(lazy.isDecoded(Locale.ENGLISH));
+        assertEquals(Dict.of(Locale.ENGLISH, "c"), lazy.toDict());
+
+        jacksonizer = Jacksonizer.of().withLocaleFilter(LocaleFilter.of(Locale.CHINESE).withFallbacks(Locale.FRENCH));
+        assertEquals(Dict.of(Locale.FRENCH, "d"), jacksonizer.fromJson(JSON.getBytes(UTF8), LazyDict.class).toDict());
+        assertEquals(Dict.of(Locale.FRENCH, "d"), jacksonizer.fromJson(JSON, LazyDict.class).toDict());
+    }
+
+    @Test
+    public void testObjectReader() throws IOException {
+        ObjectMapper om = new ObjectMapper();
+        TodCommonsModule.registerModulesInto(om);
+        Dict dict = LocaleFilter.of(Locale.FRENCH).applyTo(om.readerFor(Dict.class)).readValue(JSON);
+        assertEquals(Dict.of(Locale.FRENCH, "d"), dict);
+    }
+
+    @Test
+    public void testErrors() {
+        try {
+            LocaleFilter.of();
+            Assert.fail();
+        }
+        catch (IllegalArgumentException ex) {
+
+        }
+    }
+}
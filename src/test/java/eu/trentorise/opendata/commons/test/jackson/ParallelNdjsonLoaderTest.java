@@ -0,0 +1,166 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.commons.test.jackson;
+
+import com.fasterxml.jackson.databind.SequenceWriter;
+import eu.trentorise.opendata.commons.Dict;
+import eu.trentorise.opendata.commons.TodConfig;
+import eu.trentorise.opendata.commons.jackson.Jacksonizer;
+import eu.trentorise.opendata.commons.jackson.ParallelNdjsonLoader;
+import eu.trentorise.opendata.commons.jackson.ParallelNdjsonLoader.ChunkHandler;
+import eu.trentorise.opendata.commons.jackson.ParallelNdjsonLoader.ChunkStats;
+import eu.trentorise.opendata.commons.jackson.ParallelNdjsonLoader.Delivery;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.junit.Assert;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @since 2.0.0
+ */
+public class ParallelNdjsonLoaderTest {
+
+    private static final Logger LOG = Logger.getLogger(ParallelNdjsonLoaderTest.class.getName());
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @BeforeClass
+    public static void beforeClass() {
+        TodConfig.init(ParallelNdjsonLoaderTest.class);
+    }
+
+    private static List<Dict> makeDicts(int n) {
+        List<Dict> ret = new ArrayList<Dict>();
+        for (int i = 0; i < n; i++) {
+            ret.add(Dict.builder().put(Locale.ITALIAN, "ciao " + i).put(Locale.ENGLISH, "hello", "" + i).build());
+        }
+        return ret;
+    }
+
+    private File writeNdjson(List<Dict> dicts) throws IOException {
+        File file = tmp.newFile("dicts.ndjson");
+        OutputStream out = new FileOutputStream(file);
+        SequenceWriter sw = Jacksonizer.of().writeValues(out);
+        for (Dict dict : dicts) {
+            sw.write(dict);
+        }
+        sw.close();
+        out.close();
+        return file;
+    }
+
+    @Test
+    public void testOrdered() throws IOException {
+        List<Dict> dicts = makeDicts(1000);
+        final File file = writeNdjson(dicts);
+
+        final List<Dict> loaded = new ArrayList<Dict>();
+        final AtomicLong bytes = new AtomicLong();
+        final List<Integer> indexes = new ArrayList<Integer>();
+
+        ParallelNdjsonLoader.of(Jacksonizer.of(), Dict.class)
+                .withChunkSize(1000)
+                .load(file, new ChunkHandler<Dict>() {
+                    @Override
+                    public void onChunk(List<Dict> values, ChunkStats stats) {
+                        LOG.log(Level.FINE, "{0}", stats);
+                        loaded.addAll(values);
+                        bytes.addAndGet(stats.getBytes());
+                        indexes.add(stats.getIndex());
+                        assertEquals(values.size(), stats.getRecords());
+                    }
+                });
+
+        assertEquals(dicts, loaded);
+        assertEquals(file.length(), bytes.get());
+        assertTrue(indexes.size() > 1);
+        for (int i = 0; i < indexes.size(); i++) {
+            assertEquals(i, (int) indexes.get(i));
+        }
+    }
+
+    @Test
+    public void testUnordered() throws IOException {
+        List<Dict> dicts = makeDicts(1000);
+        File file = writeNdjson(dicts);
+
+        final List<Dict> loaded = Collections.synchronizedList(new ArrayList<Dict>());
+
+        ParallelNdjsonLoader.of(Jacksonizer.of(), Dict.class)
+                .withChunkSize(500)
+                .withDelivery(Delivery.UNORDERED)
+                .load(file, new ChunkHandler<Dict>() {
+                    @Override
+                    public void onChunk(List<Dict> values, ChunkStats stats) {
+                        loaded.addAll(values);
+                    }
+                });
+
+        assertEquals(dicts.size(), loaded.size());
+        assertEquals(new HashSet<Dict>(dicts), new HashSet<Dict>(loaded));
+    }
+
+    @Test
+    public void testBadJson() throws IOException {
+        File file = tmp.newFile("bad.ndjson");
+        OutputStream out = new FileOutputStream(file);
+        out.write("{\"it\":[\"a\"]}\n{\"it\":[3]}\n".getBytes("UTF-8"));
+        out.close();
+
+        try {
+            ParallelNdjsonLoader.of(Jacksonizer.of(), Dict.class)
+                    .load(file, new ChunkHandler<Dict>() {
+                        @Override
+                        public void onChunk(List<Dict> values, ChunkStats stats) {
+                        }
+                    });
+            Assert.fail();
+        }
+        catch (IllegalArgumentException ex) {
+            LOG.log(Level.FINE, "expected error", ex);
+        }
+    }
+
+    @Test
+    public void testEmptyFile() throws IOException {
+        File file = tmp.newFile("empty.ndjson");
+        final List<Dict> loaded = new ArrayList<Dict>();
+        ParallelNdjsonLoader.of(Jacksonizer.of(), Dict.class)
+                .load(file, new ChunkHandler<Dict>() {
+                    @Override
+                    public void onChunk(List<Dict> values, ChunkStats stats) {
+                        loaded.addAll(values);
+                    }
+                });
+        assertTrue(loaded.isEmpty());
+    }
+}
@@ -15,30 +15,42 @@
  */
 package eu.trentorise.opendata.commons.test.jackson;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.fasterxml.jackson.databind.node.NullNode;
 import com.fasterxml.jackson.datatype.guava.GuavaModule;
 import eu.trentorise.opendata.commons.BuilderStyle;
+import com.google.common.collect.ImmutableList;
 import eu.trentorise.opendata.commons.Dict;
 import eu.trentorise.opendata.commons.LocalizedString;
 import eu.trentorise.opendata.commons.TodConfig;
 import eu.trentorise.opendata.commons.PeriodOfTime;
+import eu.trentorise.opendata.commons.jackson.SerializedFormCache;
+import eu.trentorise.opendata.commons.jackson.StringPool;
 import eu.trentorise.opendata.commons.jackson.TodCommonsModule;
 import static eu.trentorise.opendata.commons.test.jackson.TodJacksonTester.changeField;
 import static eu.trentorise.opendata.commons.test.jackson.TodJacksonTester.testJsonConv;
 import eu.trentorise.opendata.commons.validation.Ref;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.junit.After;
 import org.junit.Assert;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Ignore;
@@ -89,6 +101,58 @@ public class TodCommonsModuleTest {
         }
     }
 
+    /**
+     * The streaming Dict serializer must produce the same json as plain
+     * multimap serialization.
+     *
+     * @since 2.0.0
+     */
+    @Test
+    public void testDictSameAsMultimap() throws JsonProcessingException, IOException {
+        Dict dict = Dict.builder()
+                .put(Locale.ITALIAN, "a", "b")
+                .put(Locale.US, "c")
+                .put(Locale.ROOT, "d")
+                .build();
+
+        ObjectMapper guavaOnly = new ObjectMapper();
+        guavaOnly.registerModule(new GuavaModule());
+
+        assertEquals(guavaOnly.writeValueAsString(dict.asMultimap()), objectMapper.writeValueAsString(dict));
+        assertEquals("{\"it\":[\"a\",\"b\"],\"en_US\":[\"c\"],\"\":[\"d\"]}", objectMapper.writeValueAsString(dict));
+        assertEquals("{}", objectMapper.writeValueAsString(Dict.of()));
+        testJsonConv(objectMapper, LOG, dict);
+    }
+
+    /**
+     * @since 2.0.0
+     */
+    @Test
+    public void testDictDeser() throws IOException {
+        assertEquals(Dict.of(Locale.ITALIAN, "a"), objectMapper.readValue("{\"it\":[\"a\"]}", Dict.class));
+        assertEquals(Dict.of(), objectMapper.readValue("{\"it\":[]}", Dict.class));
+        assertEquals(Dict.of(Locale.US, "a", "b"), objectMapper.readValue("{\"en_US\":[\"a\",\"b\"]}", Dict.class));
+        assertEquals(Dict.of(Locale.US, "a"), objectMapper.readValue("{\"en-US\":[\"a\"]}", Dict.class));
+        assertEquals(Dict.builder().put(Locale.ITALIAN, "a").put(Locale.ENGLISH, "b", "c").build(),
+                objectMapper.readValue("{\"it\":[\"a\"],\"en\":[\"b\",\"c\"]}", Dict.class));
+
+        try {
+            objectMapper.readValue("{\"it\":[\"a\", null]}", Dict.class);
+            Assert.fail("Should have failed on null string!");
+        }
+        catch (JsonMappingException ex) {
+
+        }
+
+        try {
+            objectMapper.readValue("[\"a\"]", Dict.class);
+            Assert.fail("Should have failed on array!");
+        }
+        catch (JsonMappingException ex) {
+
+        }
+    }
+
     @Test
     public void testLocalizedString() throws JsonProcessingException, IOException {
 
@@ -114,6 +178,53 @@ public class TodCommonsModuleTest {
 
     }
 
+    /**
+     * @since 2.0.0
+     */
+    @Test
+    public void testCompact() throws IOException {
+        ObjectMapper compact = new ObjectMapper();
+        compact.registerModule(new GuavaModule());
+        compact.registerModule(new TodCommonsModule()
+                .enable(TodCommonsModule.Feature.WRITE_COMPACT_DICT)
+                .enable(TodCommonsModule.Feature.WRITE_COMPACT_LOCALIZED_STRING));
+
+        Dict dict = Dict.builder().put(Locale.ITALIAN, "a").put(Locale.US, "b", "c").build();
+        assertEquals("{\"it\":\"a\",\"en_US\":[\"b\",\"c\"]}", compact.writeValueAsString(dict));
+        assertEquals("{\"it\":\"ciao\"}", compact.writeValueAsString(LocalizedString.of(Locale.ITALIAN, "ciao")));
+        testJsonConv(compact, LOG, dict);
+        testJsonConv(compact, LOG, LocalizedString.of(Locale.US, "ciao"));
+
+        // default readers accept compact shapes
+        assertEquals(dict, objectMapper.readValue(compact.writeValueAsString(dict), Dict.class));
+        assertEquals(LocalizedString.of(Locale.ITALIAN, "ciao"), objectMapper.readValue("[\"it\",\"ciao\"]", LocalizedString.class));
+        assertEquals(LocalizedString.of(Locale.ITALIAN, "ciao"),
+                compact.readValue("{\"string\":\"ciao\",\"locale\":\"it\"}", LocalizedString.class));
+
+        assertEquals("{\"it\":[\"a\"],\"en_US\":[\"b\",\"c\"]}", objectMapper.writeValueAsString(dict));
+
+        // root sequences: arrays would be unwrapped by readValues
+        List<LocalizedString> strings = ImmutableList.of(LocalizedString.of(Locale.ITALIAN, "ciao"),
+                LocalizedString.of(Locale.US, "hello"));
+        StringWriter sw = new StringWriter();
+        compact.writer().writeValues(sw).writeAll(strings).close();
+        assertEquals(strings, compact.readerFor(LocalizedString.class).readValues(sw.toString()).readAll());
+        assertEquals(LocalizedString.of(Locale.ITALIAN, "ciao"),
+                objectMapper.readValue("{\"it\":\"ciao\"}", LocalizedString.class));
+
+        for (String json : ImmutableList.of("[\"it\"]", "[\"it\",\"a\",\"b\"]", "[null,\"a\"]", "[\"it\",3]",
+                "{\"locale\":\"it\"}", "{\"locale\":\"it\",\"string\":\"a\",\"x\":1}",
+                "{\"it\":\"a\",\"en\":\"b\"}", "{\"it\":[\"a\"]}")) {
+            try {
+                objectMapper.readValue(json, LocalizedString.class);
+                Assert.fail("Should have failed on " + json);
+            }
+            catch (JsonMappingException ex) {
+
+            }
+        }
+    }
+
     @Test
     public void testPeriodOfTime () throws JsonProcessingException, IOException {
 
@@ -124,7 +235,94 @@ public class TodCommonsModuleTest {
         testJsonConv(objectMapper, LOG, PeriodOfTime.of("1980", "1990", "bla"));
 
     }
+
+    /**
+     * @since 2.0.0
+     */
+    @Test
+    public void testPeriodOfTimeDeser() throws IOException {
+        assertEquals("{\"startDate\":\"1980\",\"endDate\":\"1990\",\"rawString\":\"bla\"}",
+                objectMapper.writeValueAsString(PeriodOfTime.of("1980", "1990", "bla")));
+        assertEquals(PeriodOfTime.of(), objectMapper.readValue("{}", PeriodOfTime.class));
+        assertEquals(PeriodOfTime.of().withStartDate("1980"),
+                objectMapper.readValue("{\"startDate\":\"1980\"}", PeriodOfTime.class));
+        assertEquals(PeriodOfTime.of("1980", "1990", "bla"),
+                objectMapper.readValue("{\"rawString\":\"bla\",\"endDate\":\"1990\",\"startDate\":\"1980\"}", PeriodOfTime.class));
+
+        for (String json : ImmutableList.of("{\"startDate\":null}", "{\"endDate\":3}", "{\"x\":\"a\"}", "[]",
+                "{\"startDate\":\"abc\"}", "{\"startDate\":\"1980\",\"endDate\":\"abc\",\"rawString\":\"bla\"}")) {
+            try {
+                objectMapper.readValue(json, PeriodOfTime.class);
+                Assert.fail("Should have failed on " + json);
+            }
+            catch (JsonMappingException ex) {
+
+            }
+        }
+    }
     
+    /**
+     * Values declared as Object get a type id with default typing
+     *
+     * @since 2.0.0
+     */
+    @Test
+    public void testPeriodOfTimeTyped() throws IOException {
+        testTypedConv(new TodCommonsModule(), PeriodOfTime.of("1980", "1990", "bla"));
+    }
+
+    /**
+     * @since 2.0.0
+     */
+    @Test
+    public void testLocalizedStringTyped() throws IOException {
+        LocalizedString value = LocalizedString.of(Locale.ITALIAN, "ciao");
+        testTypedConv(new TodCommonsModule(), value);
+        testTypedConv(new TodCommonsModule().enable(TodCommonsModule.Feature.WRITE_COMPACT_LOCALIZED_STRING), value);
+    }
+
+    /**
+     * Writes provided value with default typing enabled and checks it is
+     * read back equal.
+     */
+    private static void testTypedConv(TodCommonsModule module, Object value) throws IOException {
+        ObjectMapper om = new ObjectMapper();
+        om.registerModule(new GuavaModule());
+        om.registerModule(module);
+        om.enableDefaultTyping();
+        String json = om.writeValueAsString(new Object[]{value});
+        LOG.log(Level.FINE, "Typed json: {0}", json);
+        assertArrayEquals(new Object[]{value}, om.readValue(json, Object[].class));
+    }
+
+    /**
+     * @since 2.0.0
+     */
+    @Test
+    public void testRef() throws IOException {
+        Ref ref = Ref.builder().setDocumentId("a.csv").setPhysicalRow(3).setPhysicalColumn(2).setTracePath("$.x").build();
+        testJsonConv(objectMapper, LOG, ref);
+        testJsonConv(objectMapper, LOG, Ref.of());
+        testTypedConv(new TodCommonsModule(), ref);
+        testTypedConv(new TodCommonsModule(), Ref.of());
+        assertEquals("{}", objectMapper.writeValueAsString(Ref.of()));
+        assertEquals("{\"documentId\":\"a.csv\",\"physicalRow\":3}",
+                objectMapper.writeValueAsString(Ref.builder().setDocumentId("a.csv").setPhysicalRow(3).build()));
+        assertEquals(Ref.of(), objectMapper.readValue("{}", Ref.class));
+        assertEquals(2, objectMapper.readValue("{\"documentId\":\"a.csv\",\"physicalRow\":2}", Ref.class)
+                .getPhysicalRow());
+
+        for (String json : ImmutableList.of("{\"documentId\":null}", "{\"physicalRow\":\"3\"}", "{\"jsonPath\":\"a\"}", "[]")) {
+            try {
+                objectMapper.readValue(json, Ref.class);
+                Assert.fail("Should have failed on " + json);
+            }
+            catch (JsonMappingException ex) {
+
+            }
+        }
+    }
+
     /**
      * todo we're not really using this custom validation stuff 
      */
@@ -251,6 +449,34 @@ public class TodCommonsModuleTest {
         assertEquals(Locale.ROOT, res.locale);
     }
 
+    /**
+     * @since 2.0.0
+     */
+    @Test
+    public void testLocaleCache() throws IOException {
+        Locale loc1 = objectMapper.readValue("\"it\"", Locale.class);
+        Locale loc2 = objectMapper.readValue("\"it\"", Locale.class);
+        assertEquals(Locale.ITALIAN, loc1);
+        assertSame(loc1, loc2);
+
+        assertEquals(Locale.US, objectMapper.readValue("\"en_US\"", Locale.class));
+        assertEquals(Locale.US, objectMapper.readValue("\"en-US\"", Locale.class));
+        assertEquals(Locale.ROOT, objectMapper.readValue("\"\"", Locale.class));
+
+        String longTag = "de-DE-u-co-phonebk-ca-buddhist-nu-thai";
+        assertEquals(Locale.forLanguageTag(longTag), objectMapper.readValue("\"" + longTag + "\"", Locale.class));
+
+        Map<Locale, String> map = objectMapper.readValue("{\"en_US\":\"a\", \"it\":\"b\"}",
+                new TypeReference<Map<Locale, String>>() {
+                });
+        assertEquals("a", map.get(Locale.US));
+        assertEquals("b", map.get(Locale.ITALIAN));
+
+        Dict dict1 = objectMapper.readValue("{\"fr\":[\"a\"]}", Dict.class);
+        Dict dict2 = objectMapper.readValue("{\"fr\":[\"b\"]}", Dict.class);
+        assertSame(dict1.locales().iterator().next(), dict2.locales().iterator().next());
+    }
+
     /**
      * Tests weird module equality copied from Guava module
      */
@@ -262,4 +488,120 @@ public class TodCommonsModuleTest {
         assertNotEquals(new TodCommonsModule(), new TodCommonsModule());
     }
 
+    /**
+     * @since 2.0.0
+     */
+    @Test
+    public void testReadJacksonVersionOnce() {
+        assertSame(TodCommonsModule.readJacksonVersion(TodCommonsModule.class),
+                TodCommonsModule.readJacksonVersion(TodCommonsModule.class));
+        assertEquals(TodCommonsModule.readJacksonVersion(TodCommonsModule.class), new TodCommonsModule().version());
+    }
+
+    /**
+     * @since 2.0.0
+     */
+    @Test
+    public void testSerializedFormCache() throws IOException {
+        SerializedFormCache cache = SerializedFormCache.byIdentity(10000);
+        ObjectMapper om = new ObjectMapper();
+        om.registerModule(new GuavaModule());
+        om.registerModule(new TodCommonsModule().setSerializedFormCache(cache));
+
+        Dict dict = Dict.of(Locale.ITALIAN, "\"ciao\" \u00e8").with(Locale.ENGLISH, "hello");
+        LocalizedString ls = LocalizedString.of(Locale.FRENCH, "salut");
+        PeriodOfTime period = PeriodOfTime.of("1980", "1990", "from 1980 to 1990");
+        Ref ref = Ref.builder().setDocumentId("doc").setPhysicalRow(3).build();
+        List<Object> values = ImmutableList.<Object>of(dict, ls, period, ref, dict, ImmutableList.of(dict, ls));
+
+        String expected = objectMapper.writeValueAsString(values);
+        assertEquals(expected, om.writeValueAsString(values));
+        assertEquals(expected, new String(om.writeValueAsBytes(values), "UTF-8"));
+        assertEquals(4, cache.size());
+        assertEquals(4, cache.getStats().missCount());
+        assertEquals(10, cache.getStats().hitCount());
+
+        // generators changing the output don't use the cache
+        assertEquals(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(values),
+                om.writerWithDefaultPrettyPrinter().writeValueAsString(values));
+        om.getFactory().enable(JsonGenerator.Feature.ESCAPE_NON_ASCII);
+        assertNotEquals(expected, om.writeValueAsString(dict));
+        assertEquals(objectMapper.convertValue(dict, Map.class), om.convertValue(dict, Map.class));
+        assertEquals(10, cache.getStats().hitCount());
+
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+
+        SerializedFormCache byEquality = SerializedFormCache.byEquality(10000);
+        ObjectMapper om2 = new ObjectMapper();
+        om2.registerModule(new TodCommonsModule().setSerializedFormCache(byEquality));
+        assertEquals("{\"it\":[\"a\"]}", om2.writeValueAsString(Dict.of(Locale.ITALIAN, "a")));
+        assertEquals("{\"it\":[\"a\"]}", om2.writeValueAsString(Dict.of(Locale.ITALIAN, "a")));
+        assertEquals(1, byEquality.getStats().hitCount());
+
+        // cached forms have no type id
+        SerializedFormCache typedCache = SerializedFormCache.byIdentity(10000);
+        for (Object value : ImmutableList.of(ls, period, ref)) {
+            testTypedConv(new TodCommonsModule().setSerializedFormCache(typedCache), value);
+        }
+        assertEquals(0, typedCache.size());
+    }
+
+    /**
+     * @since 2.0.0
+     */
+    @Test
+    public void testStringPool() throws IOException {
+        StringPool pool = StringPool.of(64, true);
+        ObjectMapper om = new ObjectMapper();
+        om.registerModule(new GuavaModule());
+        om.registerModule(new TodCommonsModule().setStringPool(pool));
+
+        List<Dict> dicts = om.readValue("[{\"it\":[\"CC-BY\"]}, {\"en\":\"CC-BY\", \"it\":[\"a\",\"CC-BY\"]}]",
+                new TypeReference<List<Dict>>() {
+        });
+        String s1 = dicts.get(0).get(Locale.ITALIAN).get(0);
+        assertSame(s1, dicts.get(1).get(Locale.ENGLISH).get(0));
+        assertSame(s1, dicts.get(1).get(Locale.ITALIAN).get(1));
+        assertEquals(2, pool.getStringStats().getHits());
+        assertEquals(2, pool.getStringStats().getMisses());
+        assertEquals(0.5, pool.getStringStats().getHitRate(), 0.0);
+
+        LocalizedString ls1 = om.readValue("{\"locale\":\"it\",\"string\":\"CC-BY\"}", LocalizedString.class);
+        LocalizedString ls2 = om.readValue("[\"it\",\"CC-BY\"]", LocalizedString.class);
+        assertEquals(LocalizedString.of(Locale.ITALIAN, "CC-BY"), ls1);
+        assertSame(ls1, ls2);
+        assertSame(s1, ls1.str());
+        assertEquals(1, pool.getLocalizedStringStats().getHits());
+
+        // without localized strings pooling only strings are shared
+        StringPool stringsOnly = StringPool.of(64);
+        ObjectMapper om2 = new ObjectMapper();
+        om2.registerModule(new TodCommonsModule().setStringPool(stringsOnly));
+        LocalizedString ls3 = om2.readValue("[\"it\",\"x\"]", LocalizedString.class);
+        LocalizedString ls4 = om2.readValue("[\"it\",\"x\"]", LocalizedString.class);
+        assertNotSame(ls3, ls4);
+        assertSame(ls3.str(), ls4.str());
+        assertEquals(0, stringsOnly.getLocalizedStringStats().getMisses());
+
+        // document ids of refs from different documents are shared too
+        String refs = "[{\"documentId\":\"a.csv\"}, {\"documentId\":\"b.csv\"}, {\"documentId\":\"a.csv\"}]";
+        List<Ref> pooledRefs = om2.readValue(refs, new TypeReference<List<Ref>>() {
+        });
+        assertSame(pooledRefs.get(0).getDocumentId(), pooledRefs.get(2).getDocumentId());
+        List<Ref> plainRefs = objectMapper.readValue(refs, new TypeReference<List<Ref>>() {
+        });
+        assertEquals(pooledRefs, plainRefs);
+        assertNotSame(plainRefs.get(0).getDocumentId(), plainRefs.get(2).getDocumentId());
+
+        assertSame("a", StringPool.of(2).intern("a"));
+        try {
+            StringPool.of(0);
+            Assert.fail();
+        }
+        catch (IllegalArgumentException ex) {
+
+        }
+    }
+
 }